@@ -0,0 +1,240 @@
+// Copyright 2015 Sebastian Kuerten
+//
+// This file is part of osm4j.
+//
+// osm4j is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// osm4j is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with osm4j. If not, see <http://www.gnu.org/licenses/>.
+
+
+package de.topobyte.osm4j.xml.dynsax;
+
+import de.topobyte.osm4j.core.access.OsmHandler;
+import de.topobyte.osm4j.core.access.OsmInputException;
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.core.access.OsmReader;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An iterator that runs an OsmXmlReader on a pooled background thread. Parsed
+ * entities are handed over in batches through a bounded queue, so the parser
+ * can run ahead of the consumer by up to the configured number of batches
+ * without any per-entity synchronization.
+ */
+class OsmXmlBackgroundIterator implements OsmIterator, OsmHandler, Closeable {
+
+    private static final ExecutorService EXECUTOR = Executors
+            .newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "OSM XML Reader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Marks the end of the stream. Compared by identity, never delivered.
+    private static final List<EntityContainer> END = new ArrayList<>(0);
+
+    private final BlockingQueue<List<EntityContainer>> queue;
+    private final int batchSize;
+    private final CountDownLatch boundsLatch = new CountDownLatch(1);
+
+    private volatile OsmBounds bounds = null;
+    private volatile Exception exception = null;
+    private volatile boolean closed = false;
+
+    // Only accessed by the parser thread
+    private List<EntityContainer> batch;
+
+    // Only accessed by the consuming thread
+    private List<EntityContainer> current = Collections.emptyList();
+    private int index = 0;
+    private boolean finished = false;
+
+    OsmXmlBackgroundIterator(final InputStream inputStream,
+                             final boolean parseMetadata, int batchSize, int bufferedBatches) {
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+        this.queue = new ArrayBlockingQueue<>(bufferedBatches);
+        EXECUTOR.execute(() -> {
+            OsmReader reader = new OsmXmlReader(inputStream, parseMetadata);
+            reader.setHandler(this);
+            try {
+                try {
+                    reader.read();
+                } catch (OsmInputException e) {
+                    // Deliver everything parsed before the error
+                    this.exception = e;
+                    this.boundsLatch.countDown();
+                    if (this.batch != null && !this.batch.isEmpty()) {
+                        this.put(this.batch);
+                    }
+                    this.put(END);
+                }
+            } catch (CancellationException e) {
+                // closed by the consumer
+            } finally {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        });
+    }
+
+    private void put(List<EntityContainer> list) {
+        try {
+            while (!this.closed) {
+                if (this.queue.offer(list, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new CancellationException("iterator has been closed");
+    }
+
+    private void add(EntityContainer container) {
+        this.boundsLatch.countDown();
+        this.batch.add(container);
+        if (this.batch.size() >= this.batchSize) {
+            this.put(this.batch);
+            this.batch = new ArrayList<>(this.batchSize);
+        }
+    }
+
+    @Override
+    public void handle(OsmBounds bounds) {
+        if (this.boundsLatch.getCount() > 0) {
+            this.bounds = bounds;
+            this.boundsLatch.countDown();
+        }
+    }
+
+    @Override
+    public void handle(OsmNode node) {
+        this.add(new EntityContainer(EntityType.Node, node));
+    }
+
+    @Override
+    public void handle(OsmWay way) {
+        this.add(new EntityContainer(EntityType.Way, way));
+    }
+
+    @Override
+    public void handle(OsmRelation relation) {
+        this.add(new EntityContainer(EntityType.Relation, relation));
+    }
+
+    @Override
+    public void complete() {
+        this.boundsLatch.countDown();
+        if (!this.batch.isEmpty()) {
+            this.put(this.batch);
+            this.batch = null;
+        }
+        this.put(END);
+    }
+
+    @Override
+    public Iterator<EntityContainer> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (this.index >= this.current.size()) {
+            if (this.finished) {
+                return false;
+            }
+            List<EntityContainer> next;
+            try {
+                next = this.queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.close();
+                throw new RuntimeException("interrupted while processing input", e);
+            }
+            if (next == END) {
+                // Buffered elements have all been delivered, now raise the
+                // exception if one occurred
+                this.finished = true;
+                if (this.exception != null) {
+                    throw new RuntimeException("error while processing input",
+                            this.exception);
+                }
+                return false;
+            }
+            this.current = next;
+            this.index = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public EntityContainer next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException("End of stream has been reached");
+        }
+        return this.current.get(this.index++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException(
+                "an iterator over osm files is read-only");
+    }
+
+    @Override
+    public boolean hasBounds() {
+        return this.getBounds() != null;
+    }
+
+    @Override
+    public OsmBounds getBounds() {
+        try {
+            this.boundsLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return this.bounds;
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.finished = true;
+        this.current = Collections.emptyList();
+        this.queue.clear();
+    }
+}
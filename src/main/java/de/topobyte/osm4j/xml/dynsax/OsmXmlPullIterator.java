@@ -0,0 +1,367 @@
+// Copyright 2015 Sebastian Kuerten
+//
+// This file is part of osm4j.
+//
+// osm4j is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// osm4j is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with osm4j. If not, see <http://www.gnu.org/licenses/>.
+
+
+package de.topobyte.osm4j.xml.dynsax;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmMetadata;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.impl.Bounds;
+import de.topobyte.osm4j.core.model.impl.Entity;
+import de.topobyte.osm4j.core.model.impl.Metadata;
+import de.topobyte.osm4j.core.model.impl.Node;
+import de.topobyte.osm4j.core.model.impl.Relation;
+import de.topobyte.osm4j.core.model.impl.RelationMember;
+import de.topobyte.osm4j.core.model.impl.Tag;
+import de.topobyte.osm4j.core.model.impl.Way;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A StAX-based iterator over OSM XML data that parses on the calling thread.
+ * Entities are read one at a time when they are requested, so no buffering or
+ * synchronization is needed.
+ */
+class OsmXmlPullIterator implements OsmIterator, Closeable {
+
+    private static final ThreadLocal<XMLInputFactory> FACTORY = ThreadLocal
+            .withInitial(() -> {
+                XMLInputFactory factory = XMLInputFactory.newInstance();
+                factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+                factory.setProperty(
+                        XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                        false);
+                return factory;
+            });
+
+    private static final String NAME_BOUNDS = "bounds";
+    private static final String NAME_BOUND = "bound";
+    private static final String NAME_NODE = "node";
+    private static final String NAME_WAY = "way";
+    private static final String NAME_RELATION = "relation";
+    private static final String NAME_TAG = "tag";
+    private static final String NAME_ND = "nd";
+    private static final String NAME_MEMBER = "member";
+
+    private static final String ATTR_MIN_LAT = "minlat";
+    private static final String ATTR_MAX_LAT = "maxlat";
+    private static final String ATTR_MIN_LON = "minlon";
+    private static final String ATTR_MAX_LON = "maxlon";
+    private static final String ATTR_BOX = "box";
+
+    private static final String ATTR_ID = "id";
+    private static final String ATTR_K = "k";
+    private static final String ATTR_V = "v";
+    private static final String ATTR_LON = "lon";
+    private static final String ATTR_LAT = "lat";
+    private static final String ATTR_REF = "ref";
+    private static final String ATTR_TYPE = "type";
+    private static final String ATTR_ROLE = "role";
+
+    private static final String ATTR_VERSION = "version";
+    private static final String ATTR_TIMESTAMP = "timestamp";
+    private static final String ATTR_UID = "uid";
+    private static final String ATTR_USER = "user";
+    private static final String ATTR_CHANGESET = "changeset";
+
+    private final InputStream inputStream;
+    private final XMLStreamReader reader;
+    private final boolean parseMetadata;
+    private DateParser dateParser;
+
+    private OsmBounds bounds = null;
+    private EntityContainer next = null;
+    private Exception exception = null;
+    private boolean closed = false;
+
+    OsmXmlPullIterator(InputStream inputStream, boolean parseMetadata) {
+        this.inputStream = inputStream;
+        this.parseMetadata = parseMetadata;
+        if (parseMetadata) {
+            this.dateParser = new DateParser();
+        }
+        try {
+            this.reader = FACTORY.get().createXMLStreamReader(inputStream);
+        } catch (XMLStreamException e) {
+            this.close();
+            throw new RuntimeException("error while creating xml parser", e);
+        }
+        // Read up to the first entity so that the bounds are known
+        this.advance();
+    }
+
+    private void advance() {
+        this.next = null;
+        if (this.closed) {
+            return;
+        }
+        try {
+            while (this.reader.hasNext()) {
+                if (this.reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (this.reader.getLocalName()) {
+                    case NAME_BOUNDS:
+                        this.readBounds();
+                        break;
+                    case NAME_BOUND:
+                        this.readBound();
+                        break;
+                    case NAME_NODE:
+                        this.next = this.readNode();
+                        return;
+                    case NAME_WAY:
+                        this.next = this.readWay();
+                        return;
+                    case NAME_RELATION:
+                        this.next = this.readRelation();
+                        return;
+                }
+            }
+        } catch (XMLStreamException | RuntimeException e) {
+            // Deliver the entity parsed so far before reporting the error,
+            // like the background iterator does
+            this.exception = e;
+        }
+        this.close();
+    }
+
+    private void readBounds() {
+        if (this.bounds != null) {
+            return;
+        }
+        double minLon = Double.parseDouble(this.attribute(ATTR_MIN_LON));
+        double maxLon = Double.parseDouble(this.attribute(ATTR_MAX_LON));
+        double minLat = Double.parseDouble(this.attribute(ATTR_MIN_LAT));
+        double maxLat = Double.parseDouble(this.attribute(ATTR_MAX_LAT));
+        this.bounds = new Bounds(minLon, maxLon, maxLat, minLat);
+    }
+
+    private void readBound() {
+        String box = this.attribute(ATTR_BOX);
+        if (this.bounds != null || box == null) {
+            return;
+        }
+        String[] parts = box.split(",");
+        if (parts.length == 4) {
+            double minLat = Double.parseDouble(parts[0]);
+            double minLon = Double.parseDouble(parts[1]);
+            double maxLat = Double.parseDouble(parts[2]);
+            double maxLon = Double.parseDouble(parts[3]);
+            this.bounds = new Bounds(minLon, maxLon, maxLat, minLat);
+        }
+    }
+
+    private EntityContainer readNode() throws XMLStreamException {
+        long id = Long.parseLong(this.attribute(ATTR_ID));
+        double lon = Double.parseDouble(this.attribute(ATTR_LON));
+        double lat = Double.parseDouble(this.attribute(ATTR_LAT));
+        Node node = new Node(id, lon, lat, this.readMetadata());
+        this.readChildren(node, null, null);
+        return new EntityContainer(EntityType.Node, node);
+    }
+
+    private EntityContainer readWay() throws XMLStreamException {
+        long id = Long.parseLong(this.attribute(ATTR_ID));
+        TLongList nodes = new TLongArrayList();
+        Way way = new Way(id, nodes, this.readMetadata());
+        this.readChildren(way, nodes, null);
+        return new EntityContainer(EntityType.Way, way);
+    }
+
+    private EntityContainer readRelation() throws XMLStreamException {
+        long id = Long.parseLong(this.attribute(ATTR_ID));
+        List<OsmRelationMember> members = new ArrayList<>();
+        Relation relation = new Relation(id, members, this.readMetadata());
+        this.readChildren(relation, null, members);
+        return new EntityContainer(EntityType.Relation, relation);
+    }
+
+    // Reads the direct children of the current entity element up to and
+    // including its end element
+    private void readChildren(Entity entity, TLongList nodes,
+                              List<OsmRelationMember> members) throws XMLStreamException {
+        List<OsmTag> tags = null;
+        int depth = 1;
+        while (depth > 0) {
+            int event = this.reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (depth != 2) {
+                    continue;
+                }
+                switch (this.reader.getLocalName()) {
+                    case NAME_TAG:
+                        if (tags == null) {
+                            tags = new ArrayList<>();
+                        }
+                        tags.add(new Tag(this.attribute(ATTR_K),
+                                this.attribute(ATTR_V)));
+                        break;
+                    case NAME_ND:
+                        if (nodes != null) {
+                            nodes.add(Long.parseLong(this.attribute(ATTR_REF)));
+                        }
+                        break;
+                    case NAME_MEMBER:
+                        if (members != null) {
+                            members.add(this.readMember());
+                        }
+                        break;
+                }
+            }
+        }
+        if (tags != null) {
+            entity.setTags(tags);
+        }
+    }
+
+    private RelationMember readMember() {
+        long ref = Long.parseLong(this.attribute(ATTR_REF));
+        String role = this.attribute(ATTR_ROLE);
+        EntityType type = null;
+        String aType = this.attribute(ATTR_TYPE);
+        if (aType != null) {
+            switch (aType) {
+                case "node":
+                    type = EntityType.Node;
+                    break;
+                case "way":
+                    type = EntityType.Way;
+                    break;
+                case "relation":
+                    type = EntityType.Relation;
+                    break;
+            }
+        }
+        return new RelationMember(ref, type, role);
+    }
+
+    private OsmMetadata readMetadata() {
+        if (!this.parseMetadata) {
+            return null;
+        }
+        String aVersion = this.attribute(ATTR_VERSION);
+        String aTimestamp = this.attribute(ATTR_TIMESTAMP);
+        String aUid = this.attribute(ATTR_UID);
+        String user = this.attribute(ATTR_USER);
+        String aChangeset = this.attribute(ATTR_CHANGESET);
+
+        long uid = aUid != null ? Long.parseLong(aUid) : -1;
+        int version = aVersion != null ? Integer.parseInt(aVersion) : -1;
+        long changeset = aChangeset != null ? Long.parseLong(aChangeset) : -1;
+
+        long timestamp = -1;
+        if (aTimestamp != null) {
+            LocalDateTime date = this.dateParser.parse(aTimestamp);
+            timestamp = date.toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+
+        return new Metadata(version, timestamp, uid, user != null ? user : "",
+                changeset);
+    }
+
+    private String attribute(String name) {
+        return this.reader.getAttributeValue(null, name);
+    }
+
+    @Override
+    public Iterator<EntityContainer> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.next != null) {
+            return true;
+        }
+        if (this.exception != null) {
+            Exception exception = this.exception;
+            this.exception = null;
+            throw new RuntimeException("error while processing input",
+                    exception);
+        }
+        return false;
+    }
+
+    @Override
+    public EntityContainer next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException("End of stream has been reached");
+        }
+        EntityContainer next = this.next;
+        this.advance();
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException(
+                "an iterator over osm files is read-only");
+    }
+
+    @Override
+    public boolean hasBounds() {
+        return this.bounds != null;
+    }
+
+    @Override
+    public OsmBounds getBounds() {
+        return this.bounds;
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            if (this.reader != null) {
+                this.reader.close();
+            }
+        } catch (XMLStreamException e) {
+            // ignore
+        }
+        try {
+            this.inputStream.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
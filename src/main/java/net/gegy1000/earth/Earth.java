@@ -1,9 +1,13 @@
 package net.gegy1000.earth;
 
+import net.gegy1000.earth.server.config.EarthConfig;
 import net.gegy1000.earth.server.proxy.ServerProxy;
+import net.gegy1000.earth.server.util.osm.MapHandler;
 import net.gegy1000.earth.server.util.osm.MapMaterial;
 import net.gegy1000.earth.server.world.gen.EarthGenerator;
 import net.gegy1000.earth.server.world.gen.OSMGenerator;
+import net.gegy1000.earth.server.world.gen.TileBudget;
+import net.gegy1000.earth.server.world.gen.TilePrefetcher;
 import net.gegy1000.earth.server.world.gen.WorldTypeEarth;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.SidedProxy;
@@ -21,6 +25,8 @@ public class Earth {
     @SidedProxy(clientSide = "net.gegy1000.earth.client.proxy.ClientProxy", serverSide = "net.gegy1000.earth.server.proxy.ServerProxy")
     public static ServerProxy proxy;
 
+    public static TilePrefetcher prefetcher;
+
     public static final String MODID = "earth";
     public static final String VERSION = "1.1.0";
 
@@ -28,6 +34,13 @@ public class Earth {
 
     @Mod.EventHandler
     public void preInit(FMLPreInitializationEvent event) {
+        EarthConfig.load(event.getSuggestedConfigurationFile());
+        TileBudget.SHARED.setLimit(EarthConfig.tileCacheBytes);
+        if (EarthConfig.prefetchTiles) {
+            prefetcher = new TilePrefetcher(EarthConfig.prefetchThreads, EarthConfig.prefetchMaxInFlight, EarthConfig.prefetchMargin);
+        }
+        MapHandler.init(EarthConfig.mapFetchThreads, EarthConfig.mapParseThreads, EarthConfig.mapMaxPendingTiles);
+
         new WorldTypeEarth("earth_145", GENERATOR_145, true, false, 170.0F);
         new WorldTypeEarth("osm_11", OSM_11, false, true, 260.0F);
         new WorldTypeEarth("osm_12", OSM_12, false, true, 130.0F);
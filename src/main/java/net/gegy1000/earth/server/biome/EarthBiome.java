@@ -4,6 +4,7 @@ import net.minecraft.util.ResourceLocation;
 import net.minecraft.world.biome.Biome;
 import net.minecraftforge.fml.common.Loader;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -50,6 +51,10 @@ public enum EarthBiome {
 
     private static final Map<Integer, EarthBiome> BIOMES = new HashMap<>();
 
+    private static final int INDEX_TABLE_SIZE = 128;
+    private static final int[] INDEX_COLOURS = new int[INDEX_TABLE_SIZE];
+    private static final byte[] INDEX_ORDINALS = new byte[INDEX_TABLE_SIZE];
+
     private ResourceLocation vanilla;
     private ResourceLocation bop;
     private Biome biome;
@@ -75,12 +80,36 @@ public enum EarthBiome {
     }
 
     static {
+        Arrays.fill(INDEX_COLOURS, -1);
         for (EarthBiome biome : values()) {
             BIOMES.put(biome.colour, biome);
+            int slot = indexSlot(biome.colour);
+            while (INDEX_COLOURS[slot] != -1) {
+                slot = (slot + 1) & (INDEX_TABLE_SIZE - 1);
+            }
+            INDEX_COLOURS[slot] = biome.colour;
+            INDEX_ORDINALS[slot] = (byte) biome.ordinal();
         }
     }
 
     public static EarthBiome get(int colour) {
         return BIOMES.get(colour);
     }
+
+    public static int getIndex(int colour) {
+        int slot = indexSlot(colour);
+        while (true) {
+            int key = INDEX_COLOURS[slot];
+            if (key == colour) {
+                return INDEX_ORDINALS[slot] & 0xFF;
+            } else if (key == -1) {
+                return -1;
+            }
+            slot = (slot + 1) & (INDEX_TABLE_SIZE - 1);
+        }
+    }
+
+    private static int indexSlot(int colour) {
+        return (colour * 0x9E3779B1 >>> 25) & (INDEX_TABLE_SIZE - 1);
+    }
 }
@@ -0,0 +1,56 @@
+package net.gegy1000.earth.server.command;
+
+import net.gegy1000.earth.server.util.osm.MapHandler;
+import net.gegy1000.earth.server.util.osm.source.MapDataSources;
+import net.gegy1000.earth.server.util.osm.source.MapSourceData;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentString;
+
+import java.util.Collections;
+import java.util.List;
+
+public class CommandEarthSource extends CommandBase {
+    @Override
+    public String getName() {
+        return "earthsource";
+    }
+
+    @Override
+    public int getRequiredPermissionLevel() {
+        return 2;
+    }
+
+    @Override
+    public String getUsage(ICommandSender sender) {
+        return "earthsource [" + String.join("|", MapDataSources.getNames()) + "]";
+    }
+
+    @Override
+    public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+        MapSourceData data = MapSourceData.get(server.getEntityWorld());
+        if (args.length == 0) {
+            sender.sendMessage(new TextComponentString("Map data source: " + data.getSource()));
+            return;
+        }
+        String source = args[0];
+        if (!MapDataSources.isRegistered(source)) {
+            throw new WrongUsageException(this.getUsage(sender));
+        }
+        data.setSource(source);
+        MapHandler.clear();
+        sender.sendMessage(new TextComponentString("Map data source set to " + source + ". Chunks generated from now on use it"));
+    }
+
+    @Override
+    public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] args, BlockPos pos) {
+        if (args.length == 1) {
+            return getListOfStringsMatchingLastWord(args, MapDataSources.getNames());
+        }
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,107 @@
+package net.gegy1000.earth.server.command;
+
+import net.gegy1000.earth.Earth;
+import net.gegy1000.earth.server.util.osm.MapHandler;
+import net.gegy1000.earth.server.util.osm.MapTilePipeline;
+import net.gegy1000.earth.server.util.osm.OsmTileFilter;
+import net.gegy1000.earth.server.util.osm.source.HttpDataSource;
+import net.gegy1000.earth.server.util.osm.source.HttpFetcher;
+import net.gegy1000.earth.server.util.osm.source.MapDataSource;
+import net.gegy1000.earth.server.util.osm.source.MapDataSources;
+import net.gegy1000.earth.server.world.gen.ColumnHeightCache;
+import net.gegy1000.earth.server.world.gen.EarthGenerator;
+import net.gegy1000.earth.server.world.gen.ImageDataMap;
+import net.gegy1000.earth.server.world.gen.StructureRetrofitter;
+import net.gegy1000.earth.server.world.gen.TileBudget;
+import net.gegy1000.earth.server.world.gen.TileCache;
+import net.gegy1000.earth.server.world.gen.TilePrefetcher;
+import net.gegy1000.earth.server.world.gen.WorldTypeEarth;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.text.TextComponentString;
+
+public class CommandEarthStats extends CommandBase {
+    @Override
+    public String getName() {
+        return "earthstats";
+    }
+
+    @Override
+    public int getRequiredPermissionLevel() {
+        return 2;
+    }
+
+    @Override
+    public String getUsage(ICommandSender sender) {
+        return "earthstats";
+    }
+
+    @Override
+    public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+        TileBudget budget = TileBudget.SHARED;
+        sender.sendMessage(new TextComponentString(String.format("Tile budget: %d tiles, %.1f/%.1f MB resident, %d evictions",
+                budget.getResidentCount(), toMegabytes(budget.getResidentBytes()), toMegabytes(budget.getLimit()), budget.getEvictions())));
+        TilePrefetcher prefetcher = Earth.prefetcher;
+        if (prefetcher != null) {
+            sender.sendMessage(new TextComponentString(String.format("Tile prefetch: %d in flight, %d submitted, %d cancelled", prefetcher.getInFlight(), prefetcher.getSubmitted(), prefetcher.getCancelled())));
+        }
+        MapTilePipeline pipeline = MapHandler.getPipeline();
+        if (pipeline != null) {
+            long cacheHits = pipeline.getCacheHits();
+            long loaded = pipeline.getCompleted() + pipeline.getFailed() - cacheHits;
+            sender.sendMessage(new TextComponentString(String.format("Map tiles: %d pending, %d loaded, %d failed, %d rejected", pipeline.getPending(), pipeline.getCompleted(), pipeline.getFailed(), pipeline.getRejected())));
+            if (cacheHits > 0) {
+                sender.sendMessage(new TextComponentString(String.format("Map tile cache: %d hits at %.1fms", cacheHits, pipeline.getCacheNanos() / 1e6 / cacheHits)));
+            }
+            if (loaded > 0) {
+                sender.sendMessage(new TextComponentString(String.format("Map tile stages: fetch %.1fms, parse %.1fms, rasterize %.1fms",
+                        pipeline.getFetchNanos() / 1e6 / loaded, pipeline.getParseNanos() / 1e6 / loaded, pipeline.getRasterizeNanos() / 1e6 / loaded)));
+            }
+        }
+        long filteredTiles = OsmTileFilter.getTiles();
+        if (filteredTiles > 0) {
+            sender.sendMessage(new TextComponentString(String.format("Map tile filter: %d tiles, kept %d of %d entities, %d of %d tags",
+                    filteredTiles, OsmTileFilter.getOutputEntities(), OsmTileFilter.getInputEntities(), OsmTileFilter.getOutputTags(), OsmTileFilter.getInputTags())));
+        }
+        MapDataSource source = MapDataSources.get(server.getEntityWorld());
+        if (source instanceof HttpDataSource) {
+            HttpFetcher fetcher = ((HttpDataSource) source).getFetcher();
+            long requests = fetcher.getRequests();
+            if (requests > 0) {
+                sender.sendMessage(new TextComponentString(String.format("Map requests (%s): %d at %.1fms (max %.1fms), %.1f MB, %d failed, %d retried, %d coalesced",
+                        source.getName(), requests, fetcher.getRequestNanos() / 1e6 / requests, fetcher.getMaxRequestNanos() / 1e6, toMegabytes(fetcher.getBytes()), fetcher.getFailures(), fetcher.getRetries(), fetcher.getCoalesced())));
+            }
+        }
+        long retrofitted = StructureRetrofitter.getRetrofitted();
+        double retrofitTime = retrofitted > 0 ? StructureRetrofitter.getRetrofitNanos() / 1e6 / retrofitted : 0.0;
+        sender.sendMessage(new TextComponentString(String.format("Structure retrofit: %d chunks pending, %d retrofitted at %.1fms, %d abandoned", StructureRetrofitter.getPending(server.getEntityWorld()), retrofitted, retrofitTime, StructureRetrofitter.getAbandoned())));
+        EarthGenerator generator = WorldTypeEarth.getGenerator(server.getEntityWorld());
+        ColumnHeightCache columnHeights = generator.getColumnHeights();
+        long columnHits = columnHeights.getHits();
+        long columnMisses = columnHeights.getMisses();
+        double columnHitRate = columnHits + columnMisses > 0 ? (double) columnHits / (columnHits + columnMisses) * 100.0 : 0.0;
+        sender.sendMessage(new TextComponentString(String.format("Column heights: %.2f%% hit rate (%d hits, %d misses)", columnHitRate, columnHits, columnMisses)));
+        this.sendCacheStats(sender, "Heightmap", generator.getHeightmap());
+        this.sendCacheStats(sender, "Biome map", generator.getBiomemap());
+    }
+
+    private void sendCacheStats(ICommandSender sender, String name, ImageDataMap map) {
+        if (map == null) {
+            return;
+        }
+        TileCache cache = map.getCache();
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+        long loads = cache.getLoads();
+        double hitRate = hits + misses > 0 ? (double) hits / (hits + misses) * 100.0 : 0.0;
+        double loadTime = loads > 0 ? cache.getLoadNanos() / 1e6 / loads : 0.0;
+        sender.sendMessage(new TextComponentString(String.format("%s: %.2f%% hit rate (%d hits, %d misses), %d loads at %.1fms, %d evictions, %.1f MB resident",
+                name, hitRate, hits, misses, loads, loadTime, cache.getEvictions(), toMegabytes(cache.getResidentBytes()))));
+    }
+
+    private static double toMegabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+}
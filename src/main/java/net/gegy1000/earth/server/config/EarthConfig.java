@@ -0,0 +1,68 @@
+package net.gegy1000.earth.server.config;
+
+import net.gegy1000.earth.server.util.osm.MapLoadPolicy;
+import net.minecraftforge.common.config.Configuration;
+
+import java.io.File;
+
+public class EarthConfig {
+    public static final String CATEGORY_CACHE = "cache";
+    public static final String CATEGORY_OSM = "osm";
+
+    public static long tileCacheBytes = 96L * 1024 * 1024;
+
+    public static boolean prefetchTiles = true;
+    public static int prefetchThreads = 1;
+    public static int prefetchMaxInFlight = 4;
+    public static int prefetchMargin = 96;
+
+    public static MapLoadPolicy mapLoadPolicy = MapLoadPolicy.WAIT;
+    public static int mapWaitMillis = 2000;
+    public static int mapFetchThreads = 2;
+    public static int mapParseThreads = 1;
+    public static int mapMaxPendingTiles = 16;
+    public static int retrofitBudgetMillis = 5;
+    public static String mapDataSource = "api";
+    public static String mapApiUrl = "http://api.openstreetmap.org/api/0.6/";
+    public static String mapOverpassUrl = "https://overpass-api.de/api/interpreter";
+    public static String mapLocalDirectory = "mods/earth/osm";
+    public static int mapConnectTimeoutMillis = 10000;
+    public static int mapReadTimeoutMillis = 60000;
+    public static int mapMaxConcurrentRequests = 2;
+    public static double mapRequestsPerSecond = 2.0;
+    public static int mapMaxRetries = 4;
+    public static boolean mapFilterTiles = true;
+
+    public static void load(File file) {
+        Configuration config = new Configuration(file);
+        config.load();
+
+        tileCacheBytes = config.getInt("tileCacheMegabytes", CATEGORY_CACHE, 96, 8, 4096, "Memory budget shared by all heightmap and biome tile caches, in megabytes") * 1024L * 1024L;
+
+        prefetchTiles = config.getBoolean("prefetchTiles", CATEGORY_CACHE, true, "Load heightmap and biome tiles near players on a background thread before chunks need them");
+        prefetchThreads = config.getInt("prefetchThreads", CATEGORY_CACHE, 1, 1, 8, "Number of background threads used to prefetch tiles");
+        prefetchMaxInFlight = config.getInt("prefetchMaxInFlight", CATEGORY_CACHE, 4, 1, 64, "Maximum number of tile prefetches queued or loading at once");
+        prefetchMargin = config.getInt("prefetchMargin", CATEGORY_CACHE, 96, 0, 1350, "Distance in raster pixels around players within which neighbouring tiles are prefetched");
+
+        mapLoadPolicy = MapLoadPolicy.fromName(config.getString("mapLoadPolicy", CATEGORY_OSM, "wait", "What chunk generation does while an OpenStreetMap tile is still loading. wait: block for up to mapWaitMillis, then generate terrain only. terrain_only: never block. Chunks generated without their tile have buildings and roads added once it has loaded", new String[] { "wait", "terrain_only" }));
+        mapWaitMillis = config.getInt("mapWaitMillis", CATEGORY_OSM, 2000, 0, 60000, "Longest time chunk generation waits for an OpenStreetMap tile under the wait policy, in milliseconds");
+        mapFetchThreads = config.getInt("mapFetchThreads", CATEGORY_OSM, 2, 1, 16, "Number of threads downloading or reading cached OpenStreetMap tiles");
+        mapParseThreads = config.getInt("mapParseThreads", CATEGORY_OSM, 1, 1, 8, "Number of threads parsing OpenStreetMap tiles");
+        mapMaxPendingTiles = config.getInt("mapMaxPendingTiles", CATEGORY_OSM, 16, 1, 256, "Maximum number of OpenStreetMap tiles being fetched, parsed or rasterized at once");
+        retrofitBudgetMillis = config.getInt("retrofitBudgetMillis", CATEGORY_OSM, 5, 0, 50, "Time per tick spent adding buildings and roads to chunks that were generated before their OpenStreetMap tile finished loading, in milliseconds");
+        mapDataSource = config.getString("mapDataSource", CATEGORY_OSM, "api", "Where new worlds download OpenStreetMap data from. Existing worlds keep the source they were created with unless it is changed with /earthsource, and each source caches its tiles separately. api: the OpenStreetMap editing API. overpass: an Overpass server, fetching only the features that are generated. local: extracts in mapLocalDirectory", new String[] { "api", "overpass", "local" });
+        mapApiUrl = config.getString("mapApiUrl", CATEGORY_OSM, "http://api.openstreetmap.org/api/0.6/", "Base URL of the OpenStreetMap API used by the api source");
+        mapOverpassUrl = config.getString("mapOverpassUrl", CATEGORY_OSM, "https://overpass-api.de/api/interpreter", "URL of the Overpass interpreter used by the overpass source");
+        mapLocalDirectory = config.getString("mapLocalDirectory", CATEGORY_OSM, "mods/earth/osm", "Directory of <lat>_<lon> tile extracts (.osmt, .osm.pbf, .osm.gz or .osm) used by the local source");
+        mapConnectTimeoutMillis = config.getInt("mapConnectTimeoutMillis", CATEGORY_OSM, 10000, 500, 120000, "Longest time to wait when connecting to an OpenStreetMap server, in milliseconds");
+        mapReadTimeoutMillis = config.getInt("mapReadTimeoutMillis", CATEGORY_OSM, 60000, 1000, 600000, "Longest time to wait for data from an OpenStreetMap server before the request fails, in milliseconds");
+        mapMaxConcurrentRequests = config.getInt("mapMaxConcurrentRequests", CATEGORY_OSM, 2, 1, 16, "Maximum number of requests sent to each OpenStreetMap server at once");
+        mapRequestsPerSecond = config.getFloat("mapRequestsPerSecond", CATEGORY_OSM, 2.0F, 0.05F, 100.0F, "Maximum rate of requests sent to each OpenStreetMap server, per second");
+        mapMaxRetries = config.getInt("mapMaxRetries", CATEGORY_OSM, 4, 0, 10, "Number of times a request is retried with exponential backoff after a timeout, a 429 or a 5xx response");
+        mapFilterTiles = config.getBoolean("mapFilterTiles", CATEGORY_OSM, true, "Drop OpenStreetMap features and tags that are never generated before new tiles are cached, making the cache smaller and faster to parse. Tiles already cached are not affected");
+
+        if (config.hasChanged()) {
+            config.save();
+        }
+    }
+}
@@ -1,13 +1,23 @@
 package net.gegy1000.earth.server.event;
 
+import net.gegy1000.earth.Earth;
+import net.gegy1000.earth.server.config.EarthConfig;
+import net.gegy1000.earth.server.util.osm.MapHandler;
 import net.gegy1000.earth.server.world.gen.EarthGenerator;
+import net.gegy1000.earth.server.world.gen.StructureRetrofitter;
 import net.gegy1000.earth.server.world.gen.WorldTypeEarth;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+import net.minecraftforge.fml.relauncher.Side;
+
+import java.util.concurrent.TimeUnit;
 
 public class ServerEventHandler {
+    private static final int PREFETCH_INTERVAL = 20;
+
     @SubscribeEvent
     public void onWorldLoad(WorldEvent.Load event) {
         World world = event.getWorld();
@@ -18,4 +28,32 @@ public class ServerEventHandler {
             world.setSpawnPoint(new BlockPos(x, 0, z));
         }
     }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        if (isEarthOverworld(event.getWorld())) {
+            if (Earth.prefetcher != null) {
+                Earth.prefetcher.cancelAll();
+            }
+            MapHandler.clear();
+            StructureRetrofitter.clear();
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldTick(TickEvent.WorldTickEvent event) {
+        World world = event.world;
+        if (event.phase == TickEvent.Phase.END && event.side == Side.SERVER && isEarthOverworld(world)) {
+            if (Earth.prefetcher != null && world.getTotalWorldTime() % PREFETCH_INTERVAL == 0) {
+                Earth.prefetcher.update(WorldTypeEarth.getGenerator(world), world.playerEntities);
+            }
+            if (((WorldTypeEarth) world.getWorldType()).hasStructures()) {
+                StructureRetrofitter.tick(world, TimeUnit.MILLISECONDS.toNanos(EarthConfig.retrofitBudgetMillis));
+            }
+        }
+    }
+
+    private static boolean isEarthOverworld(World world) {
+        return !world.isRemote && world.provider.getDimension() == 0 && world.getWorldType() instanceof WorldTypeEarth;
+    }
 }
@@ -1,5 +1,7 @@
 package net.gegy1000.earth.server.proxy;
 
+import net.gegy1000.earth.server.command.CommandEarthSource;
+import net.gegy1000.earth.server.command.CommandEarthStats;
 import net.gegy1000.earth.server.command.CommandEarthTeleport;
 import net.gegy1000.earth.server.event.ServerEventHandler;
 import net.minecraftforge.common.MinecraftForge;
@@ -12,5 +14,7 @@ public class ServerProxy {
 
     public void serverStart(FMLServerStartingEvent event) {
         event.registerServerCommand(new CommandEarthTeleport());
+        event.registerServerCommand(new CommandEarthStats());
+        event.registerServerCommand(new CommandEarthSource());
     }
 }
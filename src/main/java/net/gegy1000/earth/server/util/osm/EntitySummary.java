@@ -0,0 +1,74 @@
+package net.gegy1000.earth.server.util.osm;
+
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.OsmEntity;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+
+import java.util.Objects;
+
+public class EntitySummary {
+    private long count;
+    private long ids;
+    private long coordinates;
+    private long refs;
+    private long tags;
+
+    public static EntitySummary of(Iterable<EntityContainer> entities) {
+        EntitySummary summary = new EntitySummary();
+        for (EntityContainer container : entities) {
+            summary.add(container);
+        }
+        return summary;
+    }
+
+    public void add(EntityContainer container) {
+        OsmEntity entity = container.getEntity();
+        this.count++;
+        this.ids = this.ids * 31 + entity.getId();
+        for (int i = 0; i < entity.getNumberOfTags(); i++) {
+            OsmTag tag = entity.getTag(i);
+            this.tags = this.tags * 31 + Objects.hashCode(tag.getKey()) * 17 + Objects.hashCode(tag.getValue());
+        }
+        switch (container.getType()) {
+            case Node:
+                OsmNode node = (OsmNode) entity;
+                this.coordinates = this.coordinates * 31 + Double.doubleToLongBits(node.getLatitude()) + Double.doubleToLongBits(node.getLongitude());
+                break;
+            case Way:
+                OsmWay way = (OsmWay) entity;
+                for (int i = 0; i < way.getNumberOfNodes(); i++) {
+                    this.refs = this.refs * 31 + way.getNodeId(i);
+                }
+                break;
+            case Relation:
+                OsmRelation relation = (OsmRelation) entity;
+                for (int i = 0; i < relation.getNumberOfMembers(); i++) {
+                    OsmRelationMember member = relation.getMember(i);
+                    this.refs = this.refs * 31 + member.getId() * 3 + member.getType().ordinal() + Objects.hashCode(member.getRole());
+                }
+                break;
+        }
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof EntitySummary) {
+            EntitySummary summary = (EntitySummary) obj;
+            return summary.count == this.count && summary.ids == this.ids && summary.coordinates == this.coordinates && summary.refs == this.refs && summary.tags == this.tags;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.ids);
+    }
+}
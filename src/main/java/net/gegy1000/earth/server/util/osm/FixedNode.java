@@ -0,0 +1,60 @@
+package net.gegy1000.earth.server.util.osm;
+
+import de.topobyte.osm4j.core.model.iface.OsmMetadata;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.impl.Entity;
+
+import java.util.Collections;
+import java.util.List;
+
+public class FixedNode extends Entity implements OsmNode {
+    private final int latitude;
+    private final int longitude;
+
+    public FixedNode(long id, int latitude, int longitude) {
+        this(id, latitude, longitude, Collections.emptyList(), null);
+    }
+
+    public FixedNode(long id, int latitude, int longitude, List<? extends OsmTag> tags, OsmMetadata metadata) {
+        super(id, tags != null && !tags.isEmpty() ? tags : Collections.emptyList(), metadata);
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public static int toFixed(double coordinate) {
+        return (int) Math.round(coordinate * OsmTileFormat.COORDINATE_SCALE);
+    }
+
+    public static int getFixedLatitude(OsmNode node) {
+        if (node instanceof FixedNode) {
+            return ((FixedNode) node).latitude;
+        }
+        return toFixed(node.getLatitude());
+    }
+
+    public static int getFixedLongitude(OsmNode node) {
+        if (node instanceof FixedNode) {
+            return ((FixedNode) node).longitude;
+        }
+        return toFixed(node.getLongitude());
+    }
+
+    public int getFixedLatitude() {
+        return this.latitude;
+    }
+
+    public int getFixedLongitude() {
+        return this.longitude;
+    }
+
+    @Override
+    public double getLatitude() {
+        return this.latitude / OsmTileFormat.COORDINATE_SCALE;
+    }
+
+    @Override
+    public double getLongitude() {
+        return this.longitude / OsmTileFormat.COORDINATE_SCALE;
+    }
+}
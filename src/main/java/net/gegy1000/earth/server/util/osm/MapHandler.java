@@ -1,36 +1,109 @@
 package net.gegy1000.earth.server.util.osm;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
+import net.gegy1000.earth.Earth;
 import net.gegy1000.earth.server.world.gen.EarthGenerator;
 import net.gegy1000.earth.server.world.gen.WorldTypeEarth;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.World;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class MapHandler {
-    private static final LoadingCache<MapTilePos, MapTile> MAP_TILES = CacheBuilder.newBuilder()
-            .expireAfterAccess(1, TimeUnit.SECONDS)
-            .maximumSize(6)
-            .removalListener((RemovalListener<MapTilePos, MapTile>) notification -> notification.getValue().clear())
-            .build(new CacheLoader<MapTilePos, MapTile>() {
-                @Override
-                public MapTile load(MapTilePos pos) {
-                    MapTile mapTile = pos.create();
-                    mapTile.load();
-                    return mapTile;
-                }
-            });
-
-    public static MapTile getTile(World world, int x, int z) {
+    private static final Cache<MapTilePos, MapTile> MAP_TILES = CacheBuilder.newBuilder()
+            .expireAfterAccess(5, TimeUnit.SECONDS)
+            .maximumSize(16)
+            .build();
+
+    private static MapTilePipeline pipeline;
+
+    public static void init(int fetchThreads, int parseThreads, int maxPending) {
+        pipeline = new MapTilePipeline(fetchThreads, parseThreads, maxPending, MAP_TILES::put);
+    }
+
+    public static MapTilePos getPosition(World world, int x, int z) {
         EarthGenerator generator = WorldTypeEarth.getGenerator(world);
         int latitude = MathHelper.floor(generator.toLatitude(z) / MapTile.SIZE);
         int longitude = MathHelper.floor(generator.toLongitude(x) / MapTile.SIZE);
-        MapTilePos position = new MapTilePos(world, latitude, longitude);
-        return MAP_TILES.getUnchecked(position);
+        return new MapTilePos(world, latitude, longitude);
+    }
+
+    public static MapTile getLoadedTile(MapTilePos pos) {
+        return MAP_TILES.getIfPresent(pos);
+    }
+
+    public static CompletableFuture<MapTile> requestTile(MapTilePos pos) {
+        MapTile tile = MAP_TILES.getIfPresent(pos);
+        if (tile != null) {
+            return CompletableFuture.completedFuture(tile);
+        }
+        return pipeline.request(pos);
+    }
+
+    public static List<CompletableFuture<MapTile>> requestChunkTiles(World world, int chunkX, int chunkZ) {
+        int x = chunkX << 4;
+        int z = chunkZ << 4;
+        MapTilePos[] positions = { getPosition(world, x, z), getPosition(world, x + 16, z), getPosition(world, x, z + 16), getPosition(world, x + 16, z + 16) };
+        List<CompletableFuture<MapTile>> futures = new ArrayList<>(positions.length);
+        for (MapTilePos pos : positions) {
+            CompletableFuture<MapTile> future = requestTile(pos);
+            if (future == null) {
+                return null;
+            }
+            futures.add(future);
+        }
+        return futures;
+    }
+
+    public static MapTile[] getChunkTiles(World world, int chunkX, int chunkZ, long timeout) {
+        List<CompletableFuture<MapTile>> futures = requestChunkTiles(world, chunkX, chunkZ);
+        if (futures == null) {
+            return null;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        MapTile[] tiles = new MapTile[futures.size()];
+        for (int i = 0; i < tiles.length; i++) {
+            MapTile tile = await(futures.get(i), deadline - System.nanoTime());
+            if (tile == null) {
+                return null;
+            }
+            tiles[i] = tile;
+        }
+        return tiles;
+    }
+
+    private static MapTile await(CompletableFuture<MapTile> future, long timeout) {
+        if (future.isDone()) {
+            return future.isCompletedExceptionally() ? null : future.getNow(null);
+        }
+        if (timeout <= 0) {
+            return null;
+        }
+        try {
+            return future.get(timeout, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Earth.LOGGER.error("Failed to wait for map tile", e);
+            return null;
+        }
+    }
+
+    public static void clear() {
+        if (pipeline != null) {
+            pipeline.cancelAll();
+        }
+        MAP_TILES.invalidateAll();
+    }
+
+    public static MapTilePipeline getPipeline() {
+        return pipeline;
     }
 
     public static class MapTilePos {
@@ -48,6 +121,14 @@ public class MapHandler {
             return new MapTile(this.world, this.latitude, this.longitude);
         }
 
+        public int getLatitude() {
+            return this.latitude;
+        }
+
+        public int getLongitude() {
+            return this.longitude;
+        }
+
         @Override
         public int hashCode() {
             return this.longitude + 18000 << 16 | this.latitude + 9000;
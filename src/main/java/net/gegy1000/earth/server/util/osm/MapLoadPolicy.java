@@ -0,0 +1,15 @@
+package net.gegy1000.earth.server.util.osm;
+
+public enum MapLoadPolicy {
+    WAIT,
+    TERRAIN_ONLY;
+
+    public static MapLoadPolicy fromName(String name) {
+        for (MapLoadPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        return WAIT;
+    }
+}
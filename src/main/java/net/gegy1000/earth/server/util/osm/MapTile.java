@@ -1,31 +1,37 @@
 package net.gegy1000.earth.server.util.osm;
 
-import net.gegy1000.earth.Earth;
 import net.gegy1000.earth.server.util.MapPoint;
+import net.gegy1000.earth.server.util.osm.source.MapDataSource;
+import net.gegy1000.earth.server.util.osm.source.MapDataSources;
 import net.gegy1000.earth.server.world.gen.EarthGenerator;
 import net.gegy1000.earth.server.world.gen.WorldTypeEarth;
+import net.gegy1000.earth.server.world.gen.raster.BlankGenData;
 import net.gegy1000.earth.server.world.gen.raster.GenData;
 import net.gegy1000.earth.server.world.gen.raster.object.ObjectRasterization;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import net.minecraft.world.chunk.ChunkPrimer;
 
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class MapTile {
     public static final double SIZE = 0.01;
 
     private final World world;
+    private final MapDataSource source;
     private final MapPoint minPos;
     private final MapPoint maxPos;
     private final int tileLat;
     private final int tileLon;
     private final List<GenData> generationData = new ArrayList<>();
+    private final Map<Long, List<GenData>> chunkIndex = new HashMap<>();
 
     public MapTile(World world, int tileLat, int tileLon) {
         this.world = world;
+        this.source = MapDataSources.get(world);
         this.tileLat = tileLat;
         this.tileLon = tileLon;
         this.minPos = new MapPoint(world, this.tileLat * SIZE, this.tileLon * SIZE);
@@ -46,16 +52,30 @@ public class MapTile {
         return this.tileLon + 18000 << 16 | this.tileLat + 9000;
     }
 
-    public void load() {
+    public void rasterize(List<MapObject> mapObjects) {
         EarthGenerator generator = WorldTypeEarth.getGenerator(this.world);
         ObjectRasterization.GRAPHICS.frame(this.minPos, this.maxPos);
-        try (InputStream in = OpenStreetMap.openStream(this)) {
-            List<MapObject> mapObjects = OpenStreetMap.parse(in);
-            for (MapObject object : mapObjects) {
-                this.rasterize(generator, object);
+        for (MapObject object : mapObjects) {
+            this.rasterize(generator, object);
+        }
+        this.buildIndex();
+    }
+
+    public void buildIndex() {
+        this.chunkIndex.clear();
+        for (GenData data : this.generationData) {
+            if (data instanceof BlankGenData) {
+                continue;
+            }
+            int minChunkX = data.getOriginX() >> 4;
+            int minChunkZ = data.getOriginZ() >> 4;
+            int maxChunkX = (data.getOriginX() + data.getWidth()) >> 4;
+            int maxChunkZ = (data.getOriginZ() + data.getHeight()) >> 4;
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                    this.chunkIndex.computeIfAbsent(ChunkPos.asLong(chunkX, chunkZ), key -> new ArrayList<>()).add(data);
+                }
             }
-        } catch (Exception e) {
-            Earth.LOGGER.error("Failed to load map tile at {} {}", this.tileLat, this.tileLon, e);
         }
     }
 
@@ -67,13 +87,29 @@ public class MapTile {
     }
 
     public void generate(ChunkPos chunk, ChunkPrimer primer) {
-        for (GenData data : this.generationData) {
-            data.generate(chunk, primer);
+        List<GenData> chunkData = this.chunkIndex.get(ChunkPos.asLong(chunk.chunkXPos, chunk.chunkZPos));
+        if (chunkData != null) {
+            for (GenData data : chunkData) {
+                data.generate(chunk, primer);
+            }
         }
     }
 
     public void clear() {
         this.generationData.clear();
+        this.chunkIndex.clear();
+    }
+
+    public World getWorld() {
+        return this.world;
+    }
+
+    public MapDataSource getSource() {
+        return this.source;
+    }
+
+    public List<GenData> getGenerationData() {
+        return this.generationData;
     }
 
     public MapPoint getMinPos() {
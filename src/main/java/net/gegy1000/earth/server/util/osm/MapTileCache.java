@@ -0,0 +1,215 @@
+package net.gegy1000.earth.server.util.osm;
+
+import net.gegy1000.earth.Earth;
+import net.gegy1000.earth.server.world.gen.EarthGenerator;
+import net.gegy1000.earth.server.world.gen.WorldTypeEarth;
+import net.gegy1000.earth.server.world.gen.raster.BlankGenData;
+import net.gegy1000.earth.server.world.gen.raster.GenData;
+import net.gegy1000.earth.server.world.gen.raster.adapter.BuildingAdapter;
+import net.gegy1000.earth.server.world.gen.raster.adapter.DefaultAdapter;
+import net.gegy1000.earth.server.world.gen.raster.adapter.GenAdapter;
+import net.gegy1000.earth.server.world.gen.raster.adapter.RoadAdapter;
+import net.gegy1000.earth.server.world.gen.raster.object.ObjectRasterization;
+import net.gegy1000.earth.server.world.gen.raster.object.meta.BuildingMaterial;
+import net.gegy1000.earth.server.world.gen.raster.object.meta.BuildingMetadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public class MapTileCache {
+    public static final File CACHE = new File(".", "mods/earth/cache/raster");
+    public static final String EXTENSION = ".gen";
+
+    public static final int MAGIC = 0x4E454745;
+    public static final int VERSION = 2;
+
+    private static final int ADAPTER_DEFAULT = 0;
+    private static final int ADAPTER_ROAD = 1;
+    private static final int ADAPTER_BUILDING = 2;
+
+    public static File getFile(MapTile tile, EarthGenerator generator) {
+        File directory = new File(OpenStreetMap.getCacheDirectory(CACHE, tile.getSource()), "scale_" + generator.getWorldScale());
+        return new File(directory, tile.getTileLat() + "_" + tile.getTileLon() + EXTENSION);
+    }
+
+    public static boolean read(MapTile tile) {
+        EarthGenerator generator = WorldTypeEarth.getGenerator(tile.getWorld());
+        File file = getFile(tile, generator);
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != ObjectRasterization.VERSION) {
+                return false;
+            }
+            OsmTilePack source = OpenStreetMap.getPack(tile);
+            int length = source.getLength(tile.getTileLat(), tile.getTileLon());
+            if (length == 0 || in.readLong() != length || in.readLong() != source.getStamp(tile.getTileLat(), tile.getTileLon())) {
+                return false;
+            }
+            Inflater inflater = new Inflater();
+            try {
+                DataInputStream data = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in, inflater)));
+                int adapterCount = data.readInt();
+                GenAdapter[] adapters = new GenAdapter[adapterCount];
+                for (int i = 0; i < adapterCount; i++) {
+                    adapters[i] = readAdapter(data, generator);
+                }
+                int count = data.readInt();
+                List<GenData> generationData = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    GenAdapter adapter = adapters[data.readInt()];
+                    int originX = data.readInt();
+                    int originZ = data.readInt();
+                    int width = data.readInt();
+                    int height = data.readInt();
+                    byte[] raster = new byte[width * height];
+                    data.readFully(raster);
+                    generationData.add(new GenData(originX, originZ, width, height, raster).adapt(adapter));
+                }
+                tile.getGenerationData().addAll(generationData);
+                tile.buildIndex();
+                return true;
+            } finally {
+                inflater.end();
+            }
+        } catch (IOException | RuntimeException e) {
+            Earth.LOGGER.warn("Failed to read cached map tile {}", file, e);
+            return false;
+        }
+    }
+
+    public static void write(MapTile tile) {
+        EarthGenerator generator = WorldTypeEarth.getGenerator(tile.getWorld());
+        File file = getFile(tile, generator);
+        OsmTilePack source;
+        try {
+            source = OpenStreetMap.getPack(tile);
+        } catch (IOException e) {
+            Earth.LOGGER.warn("Failed to open OSM tile pack for {} {}", tile.getTileLat(), tile.getTileLon(), e);
+            return;
+        }
+        int length = source.getLength(tile.getTileLat(), tile.getTileLon());
+        if (length == 0) {
+            return;
+        }
+        long stamp = source.getStamp(tile.getTileLat(), tile.getTileLon());
+        File directory = file.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            Earth.LOGGER.warn("Failed to create map tile cache directory {}", directory);
+            return;
+        }
+        List<GenData> generationData = new ArrayList<>();
+        Map<GenAdapter, Integer> adapterIndices = new IdentityHashMap<>();
+        List<GenAdapter> adapters = new ArrayList<>();
+        for (GenData data : tile.getGenerationData()) {
+            if (data instanceof BlankGenData) {
+                continue;
+            }
+            generationData.add(data);
+            if (!adapterIndices.containsKey(data.getAdapter())) {
+                adapterIndices.put(data.getAdapter(), adapters.size());
+                adapters.add(data.getAdapter());
+            }
+        }
+        File temp = new File(directory, file.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ObjectRasterization.VERSION);
+                out.writeLong(length);
+                out.writeLong(stamp);
+                Deflater compressor = new Deflater();
+                try {
+                    DeflaterOutputStream deflater = new DeflaterOutputStream(out, compressor);
+                    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(deflater));
+                    data.writeInt(adapters.size());
+                    for (GenAdapter adapter : adapters) {
+                        writeAdapter(data, adapter);
+                    }
+                    data.writeInt(generationData.size());
+                    for (GenData entry : generationData) {
+                        data.writeInt(adapterIndices.get(entry.getAdapter()));
+                        data.writeInt(entry.getOriginX());
+                        data.writeInt(entry.getOriginZ());
+                        data.writeInt(entry.getWidth());
+                        data.writeInt(entry.getHeight());
+                        data.write(entry.getData());
+                    }
+                    data.flush();
+                    deflater.finish();
+                } finally {
+                    compressor.end();
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Earth.LOGGER.warn("Failed to write cached map tile {}", file, e);
+            temp.delete();
+        }
+    }
+
+    private static void writeAdapter(DataOutputStream out, GenAdapter adapter) throws IOException {
+        if (adapter instanceof BuildingAdapter) {
+            BuildingMetadata metadata = ((BuildingAdapter) adapter).getMetadata();
+            out.writeByte(ADAPTER_BUILDING);
+            out.writeUTF(metadata.getMaterial().getName());
+            out.writeInt(metadata.getLevels());
+            out.writeInt(metadata.getMinLevel());
+            out.writeInt(metadata.getHeight());
+            out.writeInt(metadata.getMinHeight());
+            int[] levelHeights = metadata.getLevelHeights();
+            out.writeInt(levelHeights.length);
+            for (int levelHeight : levelHeights) {
+                out.writeInt(levelHeight);
+            }
+        } else if (adapter instanceof RoadAdapter) {
+            out.writeByte(ADAPTER_ROAD);
+        } else {
+            out.writeByte(ADAPTER_DEFAULT);
+        }
+    }
+
+    private static GenAdapter readAdapter(DataInputStream in, EarthGenerator generator) throws IOException {
+        int kind = in.readByte();
+        switch (kind) {
+            case ADAPTER_BUILDING:
+                BuildingMaterial material = BuildingMaterial.get(in.readUTF());
+                if (material == null) {
+                    throw new IOException("Unknown building material");
+                }
+                int levels = in.readInt();
+                int minLevel = in.readInt();
+                int height = in.readInt();
+                int minHeight = in.readInt();
+                int[] levelHeights = new int[in.readInt()];
+                for (int i = 0; i < levelHeights.length; i++) {
+                    levelHeights[i] = in.readInt();
+                }
+                return new BuildingAdapter(generator, new BuildingMetadata(material, levels, minLevel, height, minHeight, levelHeights));
+            case ADAPTER_ROAD:
+                return new RoadAdapter(generator);
+            case ADAPTER_DEFAULT:
+                return new DefaultAdapter();
+            default:
+                throw new IOException("Unknown adapter kind " + kind);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package net.gegy1000.earth.server.util.osm;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.gegy1000.earth.Earth;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MapTilePipeline {
+    private final ExecutorService fetchExecutor;
+    private final ExecutorService parseExecutor;
+    private final ExecutorService rasterizeExecutor;
+    private final int maxPending;
+    private final Listener listener;
+
+    private final Map<MapHandler.MapTilePos, CompletableFuture<MapTile>> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder fetchNanos = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder rasterizeNanos = new LongAdder();
+    private final LongAdder cacheNanos = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public MapTilePipeline(int fetchThreads, int parseThreads, int maxPending, Listener listener) {
+        this.fetchExecutor = Executors.newFixedThreadPool(fetchThreads, createFactory("Earth OSM Fetch %d"));
+        this.parseExecutor = Executors.newFixedThreadPool(parseThreads, createFactory("Earth OSM Parse %d"));
+        this.rasterizeExecutor = Executors.newSingleThreadExecutor(createFactory("Earth OSM Rasterize %d"));
+        this.maxPending = maxPending;
+        this.listener = listener;
+    }
+
+    private static ThreadFactory createFactory(String name) {
+        return new ThreadFactoryBuilder().setDaemon(true).setNameFormat(name).setPriority(Thread.MIN_PRIORITY).build();
+    }
+
+    public CompletableFuture<MapTile> request(MapHandler.MapTilePos pos) {
+        CompletableFuture<MapTile> future = this.pending.get(pos);
+        if (future != null) {
+            return future;
+        }
+        if (this.pending.size() >= this.maxPending) {
+            this.rejected.increment();
+            return null;
+        }
+        CompletableFuture<MapTile> created = new CompletableFuture<>();
+        future = this.pending.putIfAbsent(pos, created);
+        if (future != null) {
+            return future;
+        }
+        MapTile tile = pos.create();
+        CompletableFuture.supplyAsync(() -> this.readCached(tile), this.fetchExecutor)
+                .thenCompose(cached -> cached ? CompletableFuture.completedFuture(tile) : this.load(tile))
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        this.failed.increment();
+                        Earth.LOGGER.error("Failed to load map tile at {} {}", tile.getTileLat(), tile.getTileLon(), throwable);
+                        this.pending.remove(pos, created);
+                        created.completeExceptionally(throwable);
+                        return;
+                    }
+                    this.completed.increment();
+                    if (this.pending.get(pos) == created) {
+                        this.listener.onLoaded(pos, tile);
+                    }
+                    this.pending.remove(pos, created);
+                    created.complete(tile);
+                });
+        return created;
+    }
+
+    private CompletableFuture<MapTile> load(MapTile tile) {
+        return CompletableFuture.supplyAsync(() -> this.fetch(tile), this.fetchExecutor)
+                .thenApplyAsync(data -> this.parse(tile, data), this.parseExecutor)
+                .thenApplyAsync(objects -> this.rasterize(tile, objects), this.rasterizeExecutor);
+    }
+
+    private boolean readCached(MapTile tile) {
+        long start = System.nanoTime();
+        boolean cached = MapTileCache.read(tile);
+        if (cached) {
+            this.cacheHits.increment();
+            this.cacheNanos.add(System.nanoTime() - start);
+        }
+        return cached;
+    }
+
+    private byte[] fetch(MapTile tile) {
+        long start = System.nanoTime();
+        try {
+            return OpenStreetMap.fetch(tile);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            this.fetchNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private List<MapObject> parse(MapTile tile, byte[] data) {
+        if (data == null) {
+            return Collections.emptyList();
+        }
+        long start = System.nanoTime();
+        try {
+            return OpenStreetMap.parse(data);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            this.parseNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private MapTile rasterize(MapTile tile, List<MapObject> objects) {
+        long start = System.nanoTime();
+        tile.rasterize(objects);
+        this.rasterizeNanos.add(System.nanoTime() - start);
+        MapTileCache.write(tile);
+        return tile;
+    }
+
+    public boolean isPending(MapHandler.MapTilePos pos) {
+        return this.pending.containsKey(pos);
+    }
+
+    public void cancelAll() {
+        this.pending.clear();
+    }
+
+    public int getPending() {
+        return this.pending.size();
+    }
+
+    public long getCompleted() {
+        return this.completed.sum();
+    }
+
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+
+    public long getCacheHits() {
+        return this.cacheHits.sum();
+    }
+
+    public long getCacheNanos() {
+        return this.cacheNanos.sum();
+    }
+
+    public long getFetchNanos() {
+        return this.fetchNanos.sum();
+    }
+
+    public long getParseNanos() {
+        return this.parseNanos.sum();
+    }
+
+    public long getRasterizeNanos() {
+        return this.rasterizeNanos.sum();
+    }
+
+    public interface Listener {
+        void onLoaded(MapHandler.MapTilePos pos, MapTile tile);
+    }
+}
@@ -4,8 +4,6 @@ import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import de.topobyte.osm4j.core.access.OsmIterator;
-import de.topobyte.osm4j.core.dataset.InMemoryMapDataSet;
-import de.topobyte.osm4j.core.dataset.MapDataSetLoader;
 import de.topobyte.osm4j.core.model.iface.OsmRelation;
 import de.topobyte.osm4j.core.model.iface.OsmWay;
 import de.topobyte.osm4j.core.model.util.OsmModelUtil;
@@ -20,39 +18,36 @@ import de.topobyte.osm4j.geometry.RegionBuilder;
 import de.topobyte.osm4j.geometry.RegionBuilderResult;
 import de.topobyte.osm4j.geometry.WayBuilder;
 import de.topobyte.osm4j.geometry.WayBuilderResult;
-import de.topobyte.osm4j.xml.dynsax.OsmXmlIterator;
 import net.gegy1000.earth.Earth;
-import net.gegy1000.earth.server.util.MapPoint;
+import net.gegy1000.earth.server.config.EarthConfig;
+import net.gegy1000.earth.server.util.osm.source.MapDataSource;
+import net.gegy1000.earth.server.util.osm.source.MapDataSources;
 import net.gegy1000.earth.server.util.osm.tag.Tags;
-import org.apache.commons.io.IOUtils;
+import net.gegy1000.earth.server.util.osm.xml.XmlIterator;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class OpenStreetMap {
     public static final File CACHE = new File(".", "mods/earth/cache/osm");
 
-    private static final String API = "http://api.openstreetmap.org/api/0.6/";
-    private static final String MAP = "map";
-
     private static final RegionBuilder REGION_BUILDER = new RegionBuilder();
     private static final WayBuilder WAY_BUILDER = new WayBuilder();
     private static final NodeBuilder NODE_BUILDER = new NodeBuilder();
@@ -62,54 +57,114 @@ public class OpenStreetMap {
         WAY_BUILDER.setMissingEntitiesStrategy(MissingEntitiesStrategy.BUILD_PARTIAL);
     }
 
-    public static InputStream openStream(MapTile tile) throws Exception {
-        File file = new File(CACHE, tile.getTileLat() + "_" + tile.getTileLon() + ".tile");
-        if (file.exists()) {
-            return new GZIPInputStream(new FileInputStream(file));
-        } else {
-            MapPoint start = tile.getMinPos();
-            MapPoint end = tile.getMaxPos();
-            String bounds = start.getLongitude() + "," + start.getLatitude() + "," + end.getLongitude() + "," + end.getLatitude();
-            java.net.URL url = new URL(API + MAP + "?bbox=" + bounds);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestProperty("Accept-Encoding", "gzip");
-            connection.setRequestMethod("GET");
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                GZIPInputStream in = new GZIPInputStream(connection.getInputStream());
-                byte[] data = IOUtils.toByteArray(in);
-                in.close();
-                if (!CACHE.exists()) {
-                    CACHE.mkdirs();
-                }
-                OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
-                out.write(data);
-                out.close();
-                return new ByteArrayInputStream(data);
-            } else {
-                Earth.LOGGER.error("{} returned response code {}!", url, responseCode);
-                InputStream in = connection.getErrorStream();
-                if (in != null) {
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        Earth.LOGGER.error(line);
-                    }
+    private static final Map<File, OsmTilePack> PACKS = new ConcurrentHashMap<>();
+
+    public static File getCacheDirectory(File root, MapDataSource source) {
+        if (source.getName().equals(MapDataSources.API)) {
+            return root;
+        }
+        return new File(root, source.getName());
+    }
+
+    public static OsmTilePack getPack(MapTile tile) throws IOException {
+        return getPack(OsmTilePack.getFile(getCacheDirectory(CACHE, tile.getSource()), tile.getTileLat(), tile.getTileLon()));
+    }
+
+    public static OsmTilePack getPack(File file) throws IOException {
+        try {
+            return PACKS.computeIfAbsent(file, key -> {
+                try {
+                    return OsmTilePack.open(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static void closePacks() {
+        for (OsmTilePack pack : PACKS.values()) {
+            try {
+                pack.close();
+            } catch (IOException e) {
+                Earth.LOGGER.warn("Failed to close OSM tile pack", e);
             }
         }
-        return null;
+        PACKS.clear();
+    }
+
+    public static File getLooseFile(MapTile tile, String extension) {
+        return new File(getCacheDirectory(CACHE, tile.getSource()), tile.getTileLat() + "_" + tile.getTileLon() + extension);
+    }
+
+    public static byte[] fetch(MapTile tile) throws IOException {
+        OsmTilePack pack = getPack(tile);
+        byte[] data = pack.read(tile.getTileLat(), tile.getTileLon());
+        if (data != null) {
+            return data;
+        }
+        File loose = getLooseFile(tile, OsmTileFormat.EXTENSION);
+        File legacy = getLooseFile(tile, ".tile");
+        OsmTileFilter filter = EarthConfig.mapFilterTiles ? OsmTileFilter.RENDERED : null;
+        if (loose.exists()) {
+            data = Files.readAllBytes(loose.toPath());
+        } else if (legacy.exists()) {
+            try (InputStream in = new GZIPInputStream(new FileInputStream(legacy))) {
+                data = encode(new XmlIterator(in, false), filter);
+            }
+        } else {
+            OsmIterator iterator = tile.getSource().open(tile);
+            if (iterator == null) {
+                return null;
+            }
+            data = encode(iterator, filter);
+        }
+        pack.write(tile.getTileLat(), tile.getTileLon(), data);
+        for (File file : new File[] { loose, legacy }) {
+            if (file.exists() && !file.delete()) {
+                Earth.LOGGER.warn("Failed to delete migrated OSM tile {}", file);
+            }
+        }
+        return data;
+    }
+
+    public static byte[] encode(byte[] xml) throws IOException {
+        return encode(new XmlIterator(new ByteArrayInputStream(xml), false));
+    }
+
+    public static byte[] encode(OsmIterator iterator) throws IOException {
+        return encode(iterator, null);
+    }
+
+    public static byte[] encode(OsmIterator iterator, OsmTileFilter filter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            OsmTileFormat.write(iterator, filter, out);
+        } finally {
+            if (iterator instanceof Closeable) {
+                ((Closeable) iterator).close();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static List<MapObject> parse(byte[] data) throws IOException {
+        return parse(new OsmTileIterator(data));
     }
 
     public static List<MapObject> parse(InputStream in) throws IOException {
-        OsmIterator iterator = new OsmXmlIterator(in, false);
-        InMemoryMapDataSet data = MapDataSetLoader.read(iterator, true, true, true);
+        return parse(new XmlIterator(in, false));
+    }
+
+    public static List<MapObject> parse(OsmIterator iterator) throws IOException {
+        OsmDataSet data = OsmDataSet.read(iterator);
         EntityFinder finder = EntityFinders.create(data, EntityNotFoundStrategy.IGNORE);
-        Collection<OsmRelation> relations = data.getRelations().valueCollection();
-        Collection<OsmWay> ways = data.getWays().valueCollection();
-        List<MapObject> objects = new ArrayList<>(relations.size() + ways.size());
+        List<MapObject> objects = new ArrayList<>(data.getRelationCount() + data.getWayCount());
         Set<OsmWay> relationMembers = new HashSet<>();
-        for (OsmRelation relation : relations) {
+        for (int i = 0; i < data.getRelationCount(); i++) {
+            OsmRelation relation = data.getRelationAt(i);
             Tags tags = Tags.from(OsmModelUtil.getTagsAsMap(relation));
             Set<OsmWay> members = new HashSet<>();
             try {
@@ -121,7 +176,8 @@ public class OpenStreetMap {
                 Earth.LOGGER.error("Failed to find OSM relation members", e);
             }
         }
-        for (OsmWay way : ways) {
+        for (int i = 0; i < data.getWayCount(); i++) {
+            OsmWay way = data.getWayAt(i);
             if (!relationMembers.contains(way)) {
                 Tags tags = Tags.from(OsmModelUtil.getTagsAsMap(way));
                 objects.add(new MapWay(data, tags, way));
@@ -134,7 +190,7 @@ public class OpenStreetMap {
     static Collection<LineString> createLines(OsmEntityProvider data, OsmWay way) {
         List<LineString> results = new ArrayList<>();
         try {
-            WayBuilderResult lines = WAY_BUILDER.build(way, data);
+            WayBuilderResult lines = WAY_BUILDER.build(way, resolverFor(data, way));
             results.addAll(lines.getLineStrings());
             if (lines.getLinearRing() != null) {
                 results.add(lines.getLinearRing());
@@ -146,7 +202,7 @@ public class OpenStreetMap {
 
     static MultiPolygon createArea(OsmEntityProvider data, OsmWay way) {
         try {
-            RegionBuilderResult region = REGION_BUILDER.build(way, data);
+            RegionBuilderResult region = REGION_BUILDER.build(way, resolverFor(data, way));
             return region.getMultiPolygon();
         } catch (EntityNotFoundException e) {
             Earth.LOGGER.warn("Couldn't find OSM relation entity", e);
@@ -166,12 +222,20 @@ public class OpenStreetMap {
 
     static List<Point> createPoints(OsmEntityProvider data, OsmWay way) {
         List<Point> points = new ArrayList<>();
+        OsmEntityProvider resolver = resolverFor(data, way);
         try {
             for (int i = 0; i < way.getNumberOfNodes(); i++) {
-                points.add(NODE_BUILDER.build(data.getNode(way.getNodeId(i))));
+                points.add(NODE_BUILDER.build(resolver.getNode(way.getNodeId(i))));
             }
         } catch (EntityNotFoundException e) {
         }
         return points;
     }
+
+    private static OsmEntityProvider resolverFor(OsmEntityProvider data, OsmWay way) {
+        if (data instanceof OsmDataSet) {
+            return ((OsmDataSet) data).resolverFor(way);
+        }
+        return data;
+    }
 }
@@ -0,0 +1,577 @@
+package net.gegy1000.earth.server.util.osm;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmEntity;
+import de.topobyte.osm4j.core.model.iface.OsmMetadata;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+import de.topobyte.osm4j.core.model.impl.RelationMember;
+import de.topobyte.osm4j.core.model.impl.Tag;
+import de.topobyte.osm4j.core.resolve.EntityNotFoundException;
+import de.topobyte.osm4j.core.resolve.OsmEntityProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OsmDataSet implements OsmEntityProvider {
+    private static final EntityType[] MEMBER_TYPES = { EntityType.Node, EntityType.Way, EntityType.Relation };
+
+    private final OsmBounds bounds;
+    private final String[] strings;
+    private final int[] tagKeys;
+    private final int[] tagValues;
+
+    private final long[] nodeIds;
+    private final int[] latitudes;
+    private final int[] longitudes;
+    private final int[] nodeTags;
+
+    private final long[] wayIds;
+    private final int[] wayOffsets;
+    private final int[] wayNodes;
+    private final long[] missingRefs;
+    private final int[] wayTags;
+
+    private final long[] relationIds;
+    private final int[] memberOffsets;
+    private final long[] memberIds;
+    private final byte[] memberTypes;
+    private final int[] memberRoles;
+    private final int[] relationTags;
+
+    private OsmDataSet(Builder builder) {
+        this.bounds = builder.bounds;
+        this.strings = builder.strings.toArray(new String[0]);
+
+        int[] nodeOrder = sortedOrder(builder.nodeIds, builder.nodeCount);
+        int[] wayOrder = sortedOrder(builder.wayIds, builder.wayCount);
+        int[] relationOrder = sortedOrder(builder.relationIds, builder.relationCount);
+
+        int tagCount = countTags(builder.nodeTags, nodeOrder) + countTags(builder.wayTags, wayOrder) + countTags(builder.relationTags, relationOrder);
+        this.tagKeys = new int[tagCount];
+        this.tagValues = new int[tagCount];
+        int tagPosition = 0;
+
+        this.nodeIds = new long[nodeOrder.length];
+        this.latitudes = new int[nodeOrder.length];
+        this.longitudes = new int[nodeOrder.length];
+        this.nodeTags = new int[nodeOrder.length + 1];
+        for (int i = 0; i < nodeOrder.length; i++) {
+            int source = nodeOrder[i];
+            this.nodeIds[i] = builder.nodeIds[source];
+            this.latitudes[i] = builder.latitudes[source];
+            this.longitudes[i] = builder.longitudes[source];
+            this.nodeTags[i] = tagPosition;
+            tagPosition = this.copyTags(builder.nodeTagPool, builder.nodeTags, source, tagPosition);
+        }
+        this.nodeTags[nodeOrder.length] = tagPosition;
+
+        int refCount = 0;
+        for (int source : wayOrder) {
+            refCount += builder.wayRefs[source + 1] - builder.wayRefs[source];
+        }
+        this.wayIds = new long[wayOrder.length];
+        this.wayOffsets = new int[wayOrder.length + 1];
+        this.wayNodes = new int[refCount];
+        this.wayTags = new int[wayOrder.length + 1];
+        long[] missing = new long[16];
+        int missingCount = 0;
+        int refPosition = 0;
+        for (int i = 0; i < wayOrder.length; i++) {
+            int source = wayOrder[i];
+            this.wayIds[i] = builder.wayIds[source];
+            this.wayOffsets[i] = refPosition;
+            for (int ref = builder.wayRefs[source]; ref < builder.wayRefs[source + 1]; ref++) {
+                long nodeId = builder.refs[ref];
+                int index = Arrays.binarySearch(this.nodeIds, nodeId);
+                if (index < 0) {
+                    if (missingCount == missing.length) {
+                        missing = Arrays.copyOf(missing, missingCount * 2);
+                    }
+                    index = ~missingCount;
+                    missing[missingCount++] = nodeId;
+                }
+                this.wayNodes[refPosition++] = index;
+            }
+            this.wayTags[i] = tagPosition;
+            tagPosition = this.copyTags(builder.wayTagPool, builder.wayTags, source, tagPosition);
+        }
+        this.wayOffsets[wayOrder.length] = refPosition;
+        this.wayTags[wayOrder.length] = tagPosition;
+        this.missingRefs = Arrays.copyOf(missing, missingCount);
+
+        int memberCount = 0;
+        for (int source : relationOrder) {
+            memberCount += builder.relationMembers[source + 1] - builder.relationMembers[source];
+        }
+        this.relationIds = new long[relationOrder.length];
+        this.memberOffsets = new int[relationOrder.length + 1];
+        this.memberIds = new long[memberCount];
+        this.memberTypes = new byte[memberCount];
+        this.memberRoles = new int[memberCount];
+        this.relationTags = new int[relationOrder.length + 1];
+        int memberPosition = 0;
+        for (int i = 0; i < relationOrder.length; i++) {
+            int source = relationOrder[i];
+            this.relationIds[i] = builder.relationIds[source];
+            this.memberOffsets[i] = memberPosition;
+            int start = builder.relationMembers[source];
+            int length = builder.relationMembers[source + 1] - start;
+            System.arraycopy(builder.memberIds, start, this.memberIds, memberPosition, length);
+            System.arraycopy(builder.memberTypes, start, this.memberTypes, memberPosition, length);
+            System.arraycopy(builder.memberRoles, start, this.memberRoles, memberPosition, length);
+            memberPosition += length;
+            this.relationTags[i] = tagPosition;
+            tagPosition = this.copyTags(builder.relationTagPool, builder.relationTags, source, tagPosition);
+        }
+        this.memberOffsets[relationOrder.length] = memberPosition;
+        this.relationTags[relationOrder.length] = tagPosition;
+    }
+
+    public static OsmDataSet read(OsmIterator iterator) {
+        Builder builder = new Builder(iterator.hasBounds() ? iterator.getBounds() : null);
+        while (iterator.hasNext()) {
+            EntityContainer container = iterator.next();
+            switch (container.getType()) {
+                case Node:
+                    builder.addNode((OsmNode) container.getEntity());
+                    break;
+                case Way:
+                    builder.addWay((OsmWay) container.getEntity());
+                    break;
+                case Relation:
+                    builder.addRelation((OsmRelation) container.getEntity());
+                    break;
+            }
+        }
+        return new OsmDataSet(builder);
+    }
+
+    private static int[] sortedOrder(long[] ids, int count) {
+        boolean sorted = true;
+        for (int i = 1; i < count && sorted; i++) {
+            sorted = ids[i - 1] < ids[i];
+        }
+        if (sorted) {
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            return order;
+        }
+        Integer[] indices = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+        Arrays.sort(indices, (first, second) -> Long.compare(ids[first], ids[second]));
+        int[] order = new int[count];
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            int index = indices[i];
+            if (unique > 0 && ids[order[unique - 1]] == ids[index]) {
+                order[unique - 1] = index;
+            } else {
+                order[unique++] = index;
+            }
+        }
+        return Arrays.copyOf(order, unique);
+    }
+
+    private static int countTags(int[] offsets, int[] order) {
+        int count = 0;
+        for (int source : order) {
+            count += offsets[source + 1] - offsets[source];
+        }
+        return count;
+    }
+
+    private int copyTags(TagPool pool, int[] offsets, int source, int position) {
+        int start = offsets[source];
+        int length = offsets[source + 1] - start;
+        System.arraycopy(pool.keys, start, this.tagKeys, position, length);
+        System.arraycopy(pool.values, start, this.tagValues, position, length);
+        return position + length;
+    }
+
+    public boolean hasBounds() {
+        return this.bounds != null;
+    }
+
+    public OsmBounds getBounds() {
+        return this.bounds;
+    }
+
+    public int getNodeCount() {
+        return this.nodeIds.length;
+    }
+
+    public int getWayCount() {
+        return this.wayIds.length;
+    }
+
+    public int getRelationCount() {
+        return this.relationIds.length;
+    }
+
+    public OsmNode getNodeAt(int index) {
+        return new NodeView(index);
+    }
+
+    public OsmWay getWayAt(int index) {
+        return new WayView(index);
+    }
+
+    public OsmRelation getRelationAt(int index) {
+        return new RelationView(index);
+    }
+
+    @Override
+    public OsmNode getNode(long id) throws EntityNotFoundException {
+        int index = Arrays.binarySearch(this.nodeIds, id);
+        if (index < 0) {
+            throw new EntityNotFoundException("unable to find node with id: " + id);
+        }
+        return new NodeView(index);
+    }
+
+    @Override
+    public OsmWay getWay(long id) throws EntityNotFoundException {
+        int index = Arrays.binarySearch(this.wayIds, id);
+        if (index < 0) {
+            throw new EntityNotFoundException("unable to find way with id: " + id);
+        }
+        return new WayView(index);
+    }
+
+    @Override
+    public OsmRelation getRelation(long id) throws EntityNotFoundException {
+        int index = Arrays.binarySearch(this.relationIds, id);
+        if (index < 0) {
+            throw new EntityNotFoundException("unable to find relation with id: " + id);
+        }
+        return new RelationView(index);
+    }
+
+    public OsmEntityProvider resolverFor(OsmWay way) {
+        if (way instanceof WayView && ((WayView) way).getDataSet() == this) {
+            return new WayResolver(((WayView) way).index);
+        }
+        return this;
+    }
+
+    private long getWayNodeId(int ref) {
+        int index = this.wayNodes[ref];
+        return index >= 0 ? this.nodeIds[index] : this.missingRefs[~index];
+    }
+
+    private abstract class EntityView implements OsmEntity {
+        protected final int index;
+
+        EntityView(int index) {
+            this.index = index;
+        }
+
+        protected abstract int[] getTagOffsets();
+
+        OsmDataSet getDataSet() {
+            return OsmDataSet.this;
+        }
+
+        @Override
+        public int getNumberOfTags() {
+            int[] offsets = this.getTagOffsets();
+            return offsets[this.index + 1] - offsets[this.index];
+        }
+
+        @Override
+        public OsmTag getTag(int n) {
+            int tag = this.getTagOffsets()[this.index] + n;
+            return new Tag(OsmDataSet.this.strings[OsmDataSet.this.tagKeys[tag]], OsmDataSet.this.strings[OsmDataSet.this.tagValues[tag]]);
+        }
+
+        @Override
+        public OsmMetadata getMetadata() {
+            return null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj != null && obj.getClass() == this.getClass()) {
+                EntityView view = (EntityView) obj;
+                return view.index == this.index && view.getDataSet() == this.getDataSet();
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.index * 31 + this.getClass().hashCode();
+        }
+    }
+
+    private class NodeView extends EntityView implements OsmNode {
+        NodeView(int index) {
+            super(index);
+        }
+
+        @Override
+        protected int[] getTagOffsets() {
+            return OsmDataSet.this.nodeTags;
+        }
+
+        @Override
+        public long getId() {
+            return OsmDataSet.this.nodeIds[this.index];
+        }
+
+        @Override
+        public double getLatitude() {
+            return OsmDataSet.this.latitudes[this.index] / OsmTileFormat.COORDINATE_SCALE;
+        }
+
+        @Override
+        public double getLongitude() {
+            return OsmDataSet.this.longitudes[this.index] / OsmTileFormat.COORDINATE_SCALE;
+        }
+    }
+
+    private class WayView extends EntityView implements OsmWay {
+        WayView(int index) {
+            super(index);
+        }
+
+        @Override
+        protected int[] getTagOffsets() {
+            return OsmDataSet.this.wayTags;
+        }
+
+        @Override
+        public long getId() {
+            return OsmDataSet.this.wayIds[this.index];
+        }
+
+        @Override
+        public int getNumberOfNodes() {
+            return OsmDataSet.this.wayOffsets[this.index + 1] - OsmDataSet.this.wayOffsets[this.index];
+        }
+
+        @Override
+        public long getNodeId(int n) {
+            return OsmDataSet.this.getWayNodeId(OsmDataSet.this.wayOffsets[this.index] + n);
+        }
+    }
+
+    private class RelationView extends EntityView implements OsmRelation {
+        RelationView(int index) {
+            super(index);
+        }
+
+        @Override
+        protected int[] getTagOffsets() {
+            return OsmDataSet.this.relationTags;
+        }
+
+        @Override
+        public long getId() {
+            return OsmDataSet.this.relationIds[this.index];
+        }
+
+        @Override
+        public int getNumberOfMembers() {
+            return OsmDataSet.this.memberOffsets[this.index + 1] - OsmDataSet.this.memberOffsets[this.index];
+        }
+
+        @Override
+        public OsmRelationMember getMember(int n) {
+            int member = OsmDataSet.this.memberOffsets[this.index] + n;
+            return new RelationMember(OsmDataSet.this.memberIds[member], MEMBER_TYPES[OsmDataSet.this.memberTypes[member]], OsmDataSet.this.strings[OsmDataSet.this.memberRoles[member]]);
+        }
+    }
+
+    private class WayResolver implements OsmEntityProvider {
+        private final int start;
+        private final int end;
+        private int cursor;
+
+        WayResolver(int way) {
+            this.start = OsmDataSet.this.wayOffsets[way];
+            this.end = OsmDataSet.this.wayOffsets[way + 1];
+            this.cursor = this.start;
+        }
+
+        @Override
+        public OsmNode getNode(long id) throws EntityNotFoundException {
+            int ref = this.find(id);
+            if (ref >= 0) {
+                int index = OsmDataSet.this.wayNodes[ref];
+                if (index >= 0) {
+                    this.cursor = ref + 1;
+                    return new NodeView(index);
+                }
+            }
+            return OsmDataSet.this.getNode(id);
+        }
+
+        private int find(long id) {
+            if (this.cursor < this.end && OsmDataSet.this.getWayNodeId(this.cursor) == id) {
+                return this.cursor;
+            }
+            if (this.cursor - 2 >= this.start && OsmDataSet.this.getWayNodeId(this.cursor - 2) == id) {
+                return this.cursor - 2;
+            }
+            if (this.start < this.end && OsmDataSet.this.getWayNodeId(this.start) == id) {
+                return this.start;
+            }
+            return -1;
+        }
+
+        @Override
+        public OsmWay getWay(long id) throws EntityNotFoundException {
+            return OsmDataSet.this.getWay(id);
+        }
+
+        @Override
+        public OsmRelation getRelation(long id) throws EntityNotFoundException {
+            return OsmDataSet.this.getRelation(id);
+        }
+    }
+
+    private static class Builder {
+        private final OsmBounds bounds;
+
+        private final Map<String, Integer> stringIndices = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final TagPool nodeTagPool = new TagPool();
+        private final TagPool wayTagPool = new TagPool();
+        private final TagPool relationTagPool = new TagPool();
+
+        private long[] nodeIds = new long[1024];
+        private int[] latitudes = new int[1024];
+        private int[] longitudes = new int[1024];
+        private int[] nodeTags = new int[1025];
+        private int nodeCount;
+
+        private long[] wayIds = new long[256];
+        private int[] wayRefs = new int[257];
+        private int[] wayTags = new int[257];
+        private long[] refs = new long[2048];
+        private int wayCount;
+
+        private long[] relationIds = new long[16];
+        private int[] relationMembers = new int[17];
+        private int[] relationTags = new int[17];
+        private long[] memberIds = new long[64];
+        private byte[] memberTypes = new byte[64];
+        private int[] memberRoles = new int[64];
+        private int relationCount;
+
+        Builder(OsmBounds bounds) {
+            this.bounds = bounds;
+        }
+
+        void addNode(OsmNode node) {
+            if (this.nodeCount + 1 >= this.nodeTags.length) {
+                int capacity = this.nodeIds.length * 2;
+                this.nodeIds = Arrays.copyOf(this.nodeIds, capacity);
+                this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+                this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+                this.nodeTags = Arrays.copyOf(this.nodeTags, capacity + 1);
+            }
+            this.nodeIds[this.nodeCount] = node.getId();
+            this.latitudes[this.nodeCount] = FixedNode.getFixedLatitude(node);
+            this.longitudes[this.nodeCount] = FixedNode.getFixedLongitude(node);
+            this.nodeTagPool.add(node, this);
+            this.nodeTags[++this.nodeCount] = this.nodeTagPool.count;
+        }
+
+        void addWay(OsmWay way) {
+            if (this.wayCount + 1 >= this.wayRefs.length) {
+                int capacity = this.wayIds.length * 2;
+                this.wayIds = Arrays.copyOf(this.wayIds, capacity);
+                this.wayRefs = Arrays.copyOf(this.wayRefs, capacity + 1);
+                this.wayTags = Arrays.copyOf(this.wayTags, capacity + 1);
+            }
+            int refCount = this.wayRefs[this.wayCount];
+            int nodeCount = way.getNumberOfNodes();
+            if (refCount + nodeCount > this.refs.length) {
+                this.refs = Arrays.copyOf(this.refs, Math.max(refCount + nodeCount, this.refs.length * 2));
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                this.refs[refCount + i] = way.getNodeId(i);
+            }
+            this.wayIds[this.wayCount] = way.getId();
+            this.wayTagPool.add(way, this);
+            this.wayCount++;
+            this.wayRefs[this.wayCount] = refCount + nodeCount;
+            this.wayTags[this.wayCount] = this.wayTagPool.count;
+        }
+
+        void addRelation(OsmRelation relation) {
+            if (this.relationCount + 1 >= this.relationMembers.length) {
+                int capacity = this.relationIds.length * 2;
+                this.relationIds = Arrays.copyOf(this.relationIds, capacity);
+                this.relationMembers = Arrays.copyOf(this.relationMembers, capacity + 1);
+                this.relationTags = Arrays.copyOf(this.relationTags, capacity + 1);
+            }
+            int memberCount = this.relationMembers[this.relationCount];
+            int count = relation.getNumberOfMembers();
+            if (memberCount + count > this.memberIds.length) {
+                int capacity = Math.max(memberCount + count, this.memberIds.length * 2);
+                this.memberIds = Arrays.copyOf(this.memberIds, capacity);
+                this.memberTypes = Arrays.copyOf(this.memberTypes, capacity);
+                this.memberRoles = Arrays.copyOf(this.memberRoles, capacity);
+            }
+            for (int i = 0; i < count; i++) {
+                OsmRelationMember member = relation.getMember(i);
+                this.memberIds[memberCount + i] = member.getId();
+                this.memberTypes[memberCount + i] = (byte) member.getType().ordinal();
+                this.memberRoles[memberCount + i] = this.indexOf(member.getRole());
+            }
+            this.relationIds[this.relationCount] = relation.getId();
+            this.relationTagPool.add(relation, this);
+            this.relationCount++;
+            this.relationMembers[this.relationCount] = memberCount + count;
+            this.relationTags[this.relationCount] = this.relationTagPool.count;
+        }
+
+        private int indexOf(String value) {
+            Integer index = this.stringIndices.get(value);
+            if (index == null) {
+                index = this.strings.size();
+                this.stringIndices.put(value, index);
+                this.strings.add(value);
+            }
+            return index;
+        }
+    }
+
+    private static class TagPool {
+        private int[] keys = new int[256];
+        private int[] values = new int[256];
+        private int count;
+
+        void add(OsmEntity entity, Builder builder) {
+            int tagCount = entity.getNumberOfTags();
+            if (this.count + tagCount > this.keys.length) {
+                int capacity = Math.max(this.count + tagCount, this.keys.length * 2);
+                this.keys = Arrays.copyOf(this.keys, capacity);
+                this.values = Arrays.copyOf(this.values, capacity);
+            }
+            for (int i = 0; i < tagCount; i++) {
+                OsmTag tag = entity.getTag(i);
+                this.keys[this.count] = builder.indexOf(tag.getKey());
+                this.values[this.count] = builder.indexOf(tag.getValue());
+                this.count++;
+            }
+        }
+    }
+}
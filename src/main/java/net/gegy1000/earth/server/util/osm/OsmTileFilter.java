@@ -0,0 +1,145 @@
+package net.gegy1000.earth.server.util.osm;
+
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmEntity;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+import de.topobyte.osm4j.core.model.impl.Relation;
+import de.topobyte.osm4j.core.model.impl.Way;
+import de.topobyte.osm4j.core.model.util.OsmModelUtil;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.gegy1000.earth.server.world.gen.raster.object.ObjectRasterization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+public class OsmTileFilter {
+    public static final OsmTileFilter RENDERED = new OsmTileFilter(ObjectRasterization.getRenderedKeys(), ObjectRasterization.getRenderedMetadataKeys());
+
+    private static final LongAdder TILES = new LongAdder();
+    private static final LongAdder INPUT_ENTITIES = new LongAdder();
+    private static final LongAdder OUTPUT_ENTITIES = new LongAdder();
+    private static final LongAdder INPUT_TAGS = new LongAdder();
+    private static final LongAdder OUTPUT_TAGS = new LongAdder();
+
+    private final Set<String> keys;
+    private final Set<String> metadataKeys;
+
+    public OsmTileFilter(Collection<String> keys, Collection<String> metadataKeys) {
+        this.keys = new HashSet<>(keys);
+        this.metadataKeys = new HashSet<>(metadataKeys);
+    }
+
+    public boolean keepsTag(String key) {
+        if (this.keys.contains(key)) {
+            return true;
+        }
+        String[] split = key.split(":");
+        return split.length > 0 && this.metadataKeys.contains(split[split.length - 1]);
+    }
+
+    public boolean isRendered(OsmEntity entity) {
+        for (int i = 0; i < entity.getNumberOfTags(); i++) {
+            if (this.keys.contains(entity.getTag(i).getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<OsmTag> filterTags(OsmEntity entity) {
+        List<OsmTag> tags = new ArrayList<>(entity.getNumberOfTags());
+        for (int i = 0; i < entity.getNumberOfTags(); i++) {
+            OsmTag tag = entity.getTag(i);
+            if (this.keepsTag(tag.getKey())) {
+                tags.add(tag);
+            }
+        }
+        return tags;
+    }
+
+    public void write(OsmBounds bounds, List<? extends OsmNode> nodes, List<? extends OsmWay> ways, List<? extends OsmRelation> relations, OutputStream output) throws IOException {
+        long inputTags = 0;
+        long outputTags = 0;
+
+        TLongSet memberWays = new TLongHashSet();
+        List<OsmRelation> keptRelations = new ArrayList<>();
+        for (OsmRelation relation : relations) {
+            inputTags += relation.getNumberOfTags();
+            if (this.isRendered(relation)) {
+                List<OsmRelationMember> members = new ArrayList<>();
+                for (int i = 0; i < relation.getNumberOfMembers(); i++) {
+                    OsmRelationMember member = relation.getMember(i);
+                    if (member.getType() == EntityType.Way) {
+                        members.add(member);
+                        memberWays.add(member.getId());
+                    }
+                }
+                List<OsmTag> tags = this.filterTags(relation);
+                outputTags += tags.size();
+                keptRelations.add(new Relation(relation.getId(), members, tags));
+            }
+        }
+
+        TLongSet wayNodes = new TLongHashSet();
+        List<OsmWay> keptWays = new ArrayList<>();
+        for (OsmWay way : ways) {
+            inputTags += way.getNumberOfTags();
+            if (memberWays.contains(way.getId()) || this.isRendered(way)) {
+                for (int i = 0; i < way.getNumberOfNodes(); i++) {
+                    wayNodes.add(way.getNodeId(i));
+                }
+                List<OsmTag> tags = this.filterTags(way);
+                outputTags += tags.size();
+                keptWays.add(tags.size() == way.getNumberOfTags() ? way : new Way(way.getId(), OsmModelUtil.nodesAsList(way), tags));
+            }
+        }
+
+        List<OsmNode> keptNodes = new ArrayList<>();
+        for (OsmNode node : nodes) {
+            inputTags += node.getNumberOfTags();
+            if (wayNodes.contains(node.getId())) {
+                keptNodes.add(node.getNumberOfTags() == 0 ? node : new FixedNode(node.getId(), FixedNode.getFixedLatitude(node), FixedNode.getFixedLongitude(node)));
+            }
+        }
+
+        TILES.increment();
+        INPUT_ENTITIES.add(nodes.size() + ways.size() + relations.size());
+        OUTPUT_ENTITIES.add(keptNodes.size() + keptWays.size() + keptRelations.size());
+        INPUT_TAGS.add(inputTags);
+        OUTPUT_TAGS.add(outputTags);
+
+        OsmTileFormat.write(bounds, keptNodes, keptWays, keptRelations, output);
+    }
+
+    public static long getTiles() {
+        return TILES.sum();
+    }
+
+    public static long getInputEntities() {
+        return INPUT_ENTITIES.sum();
+    }
+
+    public static long getOutputEntities() {
+        return OUTPUT_ENTITIES.sum();
+    }
+
+    public static long getInputTags() {
+        return INPUT_TAGS.sum();
+    }
+
+    public static long getOutputTags() {
+        return OUTPUT_TAGS.sum();
+    }
+}
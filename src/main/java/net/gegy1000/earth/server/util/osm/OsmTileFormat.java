@@ -0,0 +1,255 @@
+package net.gegy1000.earth.server.util.osm;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmEntity;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+public class OsmTileFormat {
+    public static final String EXTENSION = ".osmt";
+
+    public static final int MAGIC = 0x544D534F;
+    public static final int VERSION = 1;
+
+    public static final double COORDINATE_SCALE = 1e7;
+
+    static final int TYPE_NODE = 0;
+    static final int TYPE_WAY = 1;
+    static final int TYPE_RELATION = 2;
+
+    public static void write(OsmIterator iterator, OutputStream output) throws IOException {
+        write(iterator, null, output);
+    }
+
+    public static void write(OsmIterator iterator, OsmTileFilter filter, OutputStream output) throws IOException {
+        List<OsmNode> nodes = new ArrayList<>();
+        List<OsmWay> ways = new ArrayList<>();
+        List<OsmRelation> relations = new ArrayList<>();
+        OsmBounds bounds = iterator.hasBounds() ? iterator.getBounds() : null;
+        while (iterator.hasNext()) {
+            EntityContainer container = iterator.next();
+            switch (container.getType()) {
+                case Node:
+                    nodes.add((OsmNode) container.getEntity());
+                    break;
+                case Way:
+                    ways.add((OsmWay) container.getEntity());
+                    break;
+                case Relation:
+                    relations.add((OsmRelation) container.getEntity());
+                    break;
+            }
+        }
+        if (filter != null) {
+            filter.write(bounds, nodes, ways, relations, output);
+        } else {
+            write(bounds, nodes, ways, relations, output);
+        }
+    }
+
+    public static void write(OsmBounds bounds, List<? extends OsmNode> nodes, List<? extends OsmWay> ways, List<? extends OsmRelation> relations, OutputStream output) throws IOException {
+        StringTable strings = new StringTable();
+        for (OsmNode node : nodes) {
+            strings.addTags(node);
+        }
+        for (OsmWay way : ways) {
+            strings.addTags(way);
+        }
+        for (OsmRelation relation : relations) {
+            strings.addTags(relation);
+            for (int i = 0; i < relation.getNumberOfMembers(); i++) {
+                strings.add(relation.getMember(i).getRole());
+            }
+        }
+        strings.sort();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+        Writer writer = new Writer(body);
+        if (bounds != null) {
+            writer.writeByte(1);
+            writer.writeSigned(toFixed(bounds.getLeft()));
+            writer.writeSigned(toFixed(bounds.getRight()));
+            writer.writeSigned(toFixed(bounds.getTop()));
+            writer.writeSigned(toFixed(bounds.getBottom()));
+        } else {
+            writer.writeByte(0);
+        }
+
+        writer.writeUnsigned(strings.values.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writer.writeUnsigned(bytes.length);
+            writer.writeBytes(bytes);
+        }
+
+        writer.writeUnsigned(nodes.size());
+        long lastId = 0;
+        long lastLatitude = 0;
+        long lastLongitude = 0;
+        for (OsmNode node : nodes) {
+            long latitude = FixedNode.getFixedLatitude(node);
+            long longitude = FixedNode.getFixedLongitude(node);
+            writer.writeSigned(node.getId() - lastId);
+            writer.writeSigned(latitude - lastLatitude);
+            writer.writeSigned(longitude - lastLongitude);
+            writer.writeTags(node, strings);
+            lastId = node.getId();
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+        }
+
+        writer.writeUnsigned(ways.size());
+        lastId = 0;
+        long lastRef = 0;
+        for (OsmWay way : ways) {
+            writer.writeSigned(way.getId() - lastId);
+            int nodeCount = way.getNumberOfNodes();
+            writer.writeUnsigned(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                long ref = way.getNodeId(i);
+                writer.writeSigned(ref - lastRef);
+                lastRef = ref;
+            }
+            writer.writeTags(way, strings);
+            lastId = way.getId();
+        }
+
+        writer.writeUnsigned(relations.size());
+        lastId = 0;
+        lastRef = 0;
+        for (OsmRelation relation : relations) {
+            writer.writeSigned(relation.getId() - lastId);
+            int memberCount = relation.getNumberOfMembers();
+            writer.writeUnsigned(memberCount);
+            for (int i = 0; i < memberCount; i++) {
+                OsmRelationMember member = relation.getMember(i);
+                writer.writeByte(getTypeId(member.getType()));
+                writer.writeSigned(member.getId() - lastRef);
+                writer.writeUnsigned(strings.indexOf(member.getRole()));
+                lastRef = member.getId();
+            }
+            writer.writeTags(relation, strings);
+            lastId = relation.getId();
+        }
+
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        Deflater compressor = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            DeflaterOutputStream deflater = new DeflaterOutputStream(out, compressor, 8192);
+            body.writeTo(deflater);
+            deflater.finish();
+        } finally {
+            compressor.end();
+        }
+        out.flush();
+    }
+
+    public static long toFixed(double coordinate) {
+        return Math.round(coordinate * COORDINATE_SCALE);
+    }
+
+    private static int getTypeId(EntityType type) {
+        switch (type) {
+            case Way:
+                return TYPE_WAY;
+            case Relation:
+                return TYPE_RELATION;
+            default:
+                return TYPE_NODE;
+        }
+    }
+
+    private static class StringTable {
+        private final Map<String, Integer> counts = new HashMap<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        void add(String value) {
+            if (value == null) {
+                value = "";
+            }
+            this.counts.merge(value, 1, Integer::sum);
+        }
+
+        void addTags(OsmEntity entity) {
+            for (int i = 0; i < entity.getNumberOfTags(); i++) {
+                OsmTag tag = entity.getTag(i);
+                this.add(tag.getKey());
+                this.add(tag.getValue());
+            }
+        }
+
+        void sort() {
+            this.values.addAll(this.counts.keySet());
+            this.values.sort((a, b) -> {
+                int compare = Integer.compare(this.counts.get(b), this.counts.get(a));
+                return compare != 0 ? compare : a.compareTo(b);
+            });
+            for (int i = 0; i < this.values.size(); i++) {
+                this.indices.put(this.values.get(i), i);
+            }
+        }
+
+        int indexOf(String value) {
+            return this.indices.get(value == null ? "" : value);
+        }
+    }
+
+    private static class Writer {
+        private final OutputStream out;
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeByte(int value) throws IOException {
+            this.out.write(value);
+        }
+
+        void writeBytes(byte[] bytes) throws IOException {
+            this.out.write(bytes);
+        }
+
+        void writeUnsigned(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                this.out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            this.out.write((int) value);
+        }
+
+        void writeSigned(long value) throws IOException {
+            this.writeUnsigned((value << 1) ^ (value >> 63));
+        }
+
+        void writeTags(OsmEntity entity, StringTable strings) throws IOException {
+            int tagCount = entity.getNumberOfTags();
+            this.writeUnsigned(tagCount);
+            for (int i = 0; i < tagCount; i++) {
+                OsmTag tag = entity.getTag(i);
+                this.writeUnsigned(strings.indexOf(tag.getKey()));
+                this.writeUnsigned(strings.indexOf(tag.getValue()));
+            }
+        }
+    }
+}
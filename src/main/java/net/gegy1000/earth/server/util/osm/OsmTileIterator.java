@@ -0,0 +1,223 @@
+package net.gegy1000.earth.server.util.osm;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.impl.Bounds;
+import de.topobyte.osm4j.core.model.impl.Relation;
+import de.topobyte.osm4j.core.model.impl.RelationMember;
+import de.topobyte.osm4j.core.model.impl.Tag;
+import de.topobyte.osm4j.core.model.impl.Way;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class OsmTileIterator implements OsmIterator {
+    private static final EntityType[] TYPES = { EntityType.Node, EntityType.Way, EntityType.Relation };
+
+    private final byte[] buffer;
+    private int position;
+
+    private final OsmBounds bounds;
+    private final String[] strings;
+
+    private int section;
+    private int remaining;
+
+    private long lastId;
+    private long lastLatitude;
+    private long lastLongitude;
+    private long lastRef;
+
+    public OsmTileIterator(byte[] data) throws IOException {
+        if (!isTile(data)) {
+            throw new IOException("Invalid OSM tile header");
+        }
+        if (data[4] != OsmTileFormat.VERSION) {
+            throw new IOException("Unsupported OSM tile version " + data[4]);
+        }
+        this.buffer = inflate(data, 5);
+        if (this.readByte() != 0) {
+            double left = this.readSigned() / OsmTileFormat.COORDINATE_SCALE;
+            double right = this.readSigned() / OsmTileFormat.COORDINATE_SCALE;
+            double top = this.readSigned() / OsmTileFormat.COORDINATE_SCALE;
+            double bottom = this.readSigned() / OsmTileFormat.COORDINATE_SCALE;
+            this.bounds = new Bounds(left, right, top, bottom);
+        } else {
+            this.bounds = null;
+        }
+        this.strings = new String[(int) this.readUnsigned()];
+        for (int i = 0; i < this.strings.length; i++) {
+            int length = (int) this.readUnsigned();
+            this.strings[i] = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+            this.position += length;
+        }
+        this.section = -1;
+        this.advanceSection();
+    }
+
+    public static boolean isTile(byte[] data) {
+        if (data == null || data.length < 5) {
+            return false;
+        }
+        int magic = (data[0] & 0xFF) << 24 | (data[1] & 0xFF) << 16 | (data[2] & 0xFF) << 8 | (data[3] & 0xFF);
+        return magic == OsmTileFormat.MAGIC;
+    }
+
+    private static byte[] inflate(byte[] data, int offset) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data, offset, data.length - offset);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        byte[] chunk = new byte[16384];
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(chunk);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated OSM tile");
+                }
+                out.write(chunk, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt OSM tile", e);
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private void advanceSection() {
+        while (this.remaining == 0 && this.section < TYPES.length - 1) {
+            this.section++;
+            this.remaining = (int) this.readUnsigned();
+            this.lastId = 0;
+            this.lastRef = 0;
+        }
+    }
+
+    @Override
+    public boolean hasBounds() {
+        return this.bounds != null;
+    }
+
+    @Override
+    public OsmBounds getBounds() {
+        return this.bounds;
+    }
+
+    @Override
+    public Iterator<EntityContainer> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.remaining > 0;
+    }
+
+    @Override
+    public EntityContainer next() {
+        if (this.remaining <= 0) {
+            throw new NoSuchElementException("End of stream has been reached");
+        }
+        EntityContainer container;
+        switch (this.section) {
+            case OsmTileFormat.TYPE_NODE:
+                container = new EntityContainer(EntityType.Node, this.readNode());
+                break;
+            case OsmTileFormat.TYPE_WAY:
+                container = new EntityContainer(EntityType.Way, this.readWay());
+                break;
+            default:
+                container = new EntityContainer(EntityType.Relation, this.readRelation());
+                break;
+        }
+        this.remaining--;
+        this.advanceSection();
+        return container;
+    }
+
+    private FixedNode readNode() {
+        long id = this.lastId + this.readSigned();
+        this.lastLatitude += this.readSigned();
+        this.lastLongitude += this.readSigned();
+        this.lastId = id;
+        return new FixedNode(id, (int) this.lastLatitude, (int) this.lastLongitude, this.readTags(), null);
+    }
+
+    private Way readWay() {
+        long id = this.lastId + this.readSigned();
+        this.lastId = id;
+        int nodeCount = (int) this.readUnsigned();
+        TLongArrayList nodes = new TLongArrayList(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            this.lastRef += this.readSigned();
+            nodes.add(this.lastRef);
+        }
+        return new Way(id, nodes, this.readTags());
+    }
+
+    private Relation readRelation() {
+        long id = this.lastId + this.readSigned();
+        this.lastId = id;
+        int memberCount = (int) this.readUnsigned();
+        List<OsmRelationMember> members = new ArrayList<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            EntityType type = TYPES[this.readByte()];
+            this.lastRef += this.readSigned();
+            String role = this.strings[(int) this.readUnsigned()];
+            members.add(new RelationMember(this.lastRef, type, role));
+        }
+        return new Relation(id, members, this.readTags());
+    }
+
+    private List<OsmTag> readTags() {
+        int tagCount = (int) this.readUnsigned();
+        if (tagCount == 0) {
+            return new ArrayList<>(0);
+        }
+        List<OsmTag> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            String key = this.strings[(int) this.readUnsigned()];
+            String value = this.strings[(int) this.readUnsigned()];
+            tags.add(new Tag(key, value));
+        }
+        return tags;
+    }
+
+    private int readByte() {
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    private long readUnsigned() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = this.buffer[this.position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private long readSigned() {
+        long value = this.readUnsigned();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("an iterator over osm files is read-only");
+    }
+}
@@ -0,0 +1,131 @@
+package net.gegy1000.earth.server.util.osm;
+
+import de.topobyte.osm4j.core.dataset.InMemoryMapDataSet;
+import de.topobyte.osm4j.core.dataset.MapDataSetLoader;
+import de.topobyte.osm4j.xml.dynsax.OsmXmlIterator;
+import net.gegy1000.earth.server.util.osm.xml.XmlIterator;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+public class OsmTileMigrator {
+    private static final Pattern TILE_NAME = Pattern.compile("(-?\\d+)_(-?\\d+)(\\.tile|\\.osmt)");
+
+    public static void main(String[] args) throws IOException {
+        File directory = args.length > 0 && !args[0].startsWith("--") ? new File(args[0]) : OpenStreetMap.CACHE;
+        Set<String> flags = new HashSet<>(Arrays.asList(args));
+        if (flags.contains("--compact")) {
+            compact(directory);
+            return;
+        }
+        boolean keep = flags.contains("--keep");
+        OsmTileFilter filter = flags.contains("--unfiltered") ? null : OsmTileFilter.RENDERED;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list " + directory);
+        }
+        Arrays.sort(files);
+
+        long xmlTime = 0;
+        long tileTime = 0;
+        long looseBytes = 0;
+        long tileBytes = 0;
+        int xmlCount = 0;
+        int count = 0;
+        Set<OsmTilePack> packs = new HashSet<>();
+
+        for (File file : files) {
+            Matcher matcher = TILE_NAME.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            int tileLat = Integer.parseInt(matcher.group(1));
+            int tileLon = Integer.parseInt(matcher.group(2));
+            byte[] loose = Files.readAllBytes(file.toPath());
+            byte[] data;
+            if (matcher.group(3).equals(OsmTileFormat.EXTENSION)) {
+                data = loose;
+            } else {
+                byte[] xml;
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(loose))) {
+                    xml = IOUtils.toByteArray(in);
+                }
+
+                long start = System.nanoTime();
+                InMemoryMapDataSet expected = MapDataSetLoader.read(new OsmXmlIterator(new ByteArrayInputStream(xml), false), true, true, true);
+                xmlTime += System.nanoTime() - start;
+
+                data = OpenStreetMap.encode(new XmlIterator(new ByteArrayInputStream(xml), false), filter);
+
+                start = System.nanoTime();
+                InMemoryMapDataSet read = MapDataSetLoader.read(new OsmTileIterator(data), true, true, true);
+                tileTime += System.nanoTime() - start;
+
+                if (filter == null ? !sameCounts(read, expected) : exceedsCounts(read, expected)) {
+                    throw new IOException("OSM tile round trip mismatch for " + file.getName());
+                }
+                xmlCount++;
+            }
+
+            OsmTilePack pack = OpenStreetMap.getPack(OsmTilePack.getFile(directory, tileLat, tileLon));
+            if (!pack.contains(tileLat, tileLon)) {
+                pack.write(tileLat, tileLon, data);
+            }
+            packs.add(pack);
+            if (!keep && !file.delete()) {
+                System.out.println("Failed to delete " + file);
+            }
+
+            looseBytes += loose.length;
+            tileBytes += data.length;
+            count++;
+        }
+
+        for (OsmTilePack pack : packs) {
+            pack.compact();
+        }
+        OpenStreetMap.closePacks();
+
+        if (count > 0) {
+            System.out.printf("Migrated %d tiles into %d packs (%d -> %d bytes)%n", count, packs.size(), looseBytes, tileBytes);
+            if (xmlCount > 0) {
+                System.out.printf("XML parse: %.2fms/tile, binary parse: %.2fms/tile%n", xmlTime / 1e6 / xmlCount, tileTime / 1e6 / xmlCount);
+            }
+        } else {
+            System.out.println("No tiles found in " + directory);
+        }
+    }
+
+    private static boolean sameCounts(InMemoryMapDataSet read, InMemoryMapDataSet expected) {
+        return read.getNodes().size() == expected.getNodes().size() && read.getWays().size() == expected.getWays().size() && read.getRelations().size() == expected.getRelations().size();
+    }
+
+    private static boolean exceedsCounts(InMemoryMapDataSet read, InMemoryMapDataSet expected) {
+        return read.getNodes().size() > expected.getNodes().size() || read.getWays().size() > expected.getWays().size() || read.getRelations().size() > expected.getRelations().size();
+    }
+
+    private static void compact(File directory) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(OsmTilePack.EXTENSION));
+        if (files == null) {
+            throw new IOException("Cannot list " + directory);
+        }
+        long reclaimed = 0;
+        for (File file : files) {
+            OsmTilePack pack = OpenStreetMap.getPack(file);
+            reclaimed += pack.getGarbage();
+            pack.compact();
+        }
+        OpenStreetMap.closePacks();
+        System.out.printf("Compacted %d packs, reclaimed %d bytes%n", files.length, reclaimed);
+    }
+}
@@ -0,0 +1,379 @@
+package net.gegy1000.earth.server.util.osm;
+
+import net.gegy1000.earth.Earth;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class OsmTilePack {
+    public static final String EXTENSION = ".osmp";
+
+    public static final int MAGIC = 0x504D534F;
+    public static final int VERSION = 1;
+
+    public static final int SIZE = 100;
+    public static final int SLOT_COUNT = SIZE * SIZE;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 20;
+    private static final long DATA_START = HEADER_SIZE + (long) SLOT_COUNT * ENTRY_SIZE;
+
+    private static final int FLAG_REPLACED = 1;
+
+    private static final long COMPACT_MIN_GARBAGE = 4 * 1024 * 1024;
+
+    private final File file;
+    private RandomAccessFile access;
+    private FileChannel channel;
+
+    private final long[] offsets = new long[SLOT_COUNT];
+    private final int[] lengths = new int[SLOT_COUNT];
+    private final long[] stamps = new long[SLOT_COUNT];
+
+    private long end;
+    private long garbage;
+    private long compactThreshold = COMPACT_MIN_GARBAGE;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private OsmTilePack(File file) throws IOException {
+        this.file = file;
+        this.end = -1;
+        this.openChannel();
+        unlock(this.lockFile());
+    }
+
+    public static OsmTilePack open(File file) throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        return new OsmTilePack(file);
+    }
+
+    public static File getFile(File directory, int tileLat, int tileLon) {
+        return new File(directory, getPackCoordinate(tileLat) + "_" + getPackCoordinate(tileLon) + EXTENSION);
+    }
+
+    public static int getPackCoordinate(int tileCoordinate) {
+        return Math.floorDiv(tileCoordinate, SIZE);
+    }
+
+    private static int getSlot(int tileLat, int tileLon) {
+        return Math.floorMod(tileLat, SIZE) * SIZE + Math.floorMod(tileLon, SIZE);
+    }
+
+    private void openChannel() throws IOException {
+        this.access = new RandomAccessFile(this.file, "rw");
+        this.channel = this.access.getChannel();
+    }
+
+    private FileLock lockFile() throws IOException {
+        while (true) {
+            FileLock fileLock = this.channel.lock();
+            try {
+                if (this.channel.size() == 0) {
+                    this.end = DATA_START;
+                    this.garbage = 0;
+                    this.writeHeader();
+                    this.channel.write(ByteBuffer.allocate(SLOT_COUNT * ENTRY_SIZE), HEADER_SIZE);
+                    return fileLock;
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                while (header.hasRemaining()) {
+                    if (this.channel.read(header, header.position()) < 0) {
+                        throw new IOException("Truncated OSM tile pack " + this.file);
+                    }
+                }
+                if ((header.getInt(12) & FLAG_REPLACED) == 0) {
+                    if (header.getLong(16) != this.end || header.getLong(24) != this.garbage) {
+                        this.readIndex();
+                    }
+                    return fileLock;
+                }
+            } catch (IOException | RuntimeException e) {
+                unlock(fileLock);
+                throw e;
+            }
+            unlock(fileLock);
+            this.access.close();
+            this.openChannel();
+        }
+    }
+
+    private static void unlock(FileLock fileLock) throws IOException {
+        if (fileLock.isValid()) {
+            fileLock.release();
+        }
+    }
+
+    private void readIndex() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate((int) DATA_START).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (this.channel.read(header, header.position()) < 0) {
+                throw new IOException("Truncated OSM tile pack " + this.file);
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Invalid OSM tile pack header");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported OSM tile pack version " + version);
+        }
+        if (header.getInt() != SIZE) {
+            throw new IOException("Unsupported OSM tile pack size");
+        }
+        header.getInt();
+        this.end = header.getLong();
+        this.garbage = header.getLong();
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            this.offsets[i] = header.getLong();
+            this.lengths[i] = header.getInt();
+            this.stamps[i] = header.getLong();
+            if (this.offsets[i] + this.lengths[i] > this.end) {
+                this.offsets[i] = 0;
+                this.lengths[i] = 0;
+                this.stamps[i] = 0;
+            }
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(SIZE);
+        header.putInt(0);
+        header.putLong(this.end);
+        header.putLong(this.garbage);
+        header.flip();
+        this.channel.write(header, 0);
+    }
+
+    private void writeEntry(int slot) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putLong(this.offsets[slot]);
+        entry.putInt(this.lengths[slot]);
+        entry.putLong(this.stamps[slot]);
+        entry.flip();
+        this.channel.write(entry, HEADER_SIZE + (long) slot * ENTRY_SIZE);
+    }
+
+    public byte[] read(int tileLat, int tileLon) throws IOException {
+        int slot = getSlot(tileLat, tileLon);
+        this.lock.readLock().lock();
+        try {
+            int length = this.lengths[slot];
+            if (length == 0) {
+                return null;
+            }
+            long offset = this.offsets[slot];
+            byte[] data = new byte[length];
+            ByteBuffer target = ByteBuffer.wrap(data);
+            while (target.hasRemaining()) {
+                if (this.channel.read(target, offset + target.position()) < 0) {
+                    throw new IOException("Truncated OSM tile pack " + this.file);
+                }
+            }
+            return data;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public void write(int tileLat, int tileLon, byte[] data) throws IOException {
+        int slot = getSlot(tileLat, tileLon);
+        this.lock.writeLock().lock();
+        FileLock fileLock = null;
+        try {
+            fileLock = this.lockFile();
+            long offset = this.end;
+            ByteBuffer source = ByteBuffer.wrap(data);
+            while (source.hasRemaining()) {
+                this.channel.write(source, offset + source.position());
+            }
+            this.garbage += this.lengths[slot];
+            this.offsets[slot] = offset;
+            this.lengths[slot] = data.length;
+            this.stamps[slot] = System.currentTimeMillis();
+            this.end = offset + data.length;
+            this.writeEntry(slot);
+            this.writeHeader();
+            if (this.garbage > this.compactThreshold && this.garbage > this.end - DATA_START - this.garbage) {
+                this.compactLocked();
+            }
+        } finally {
+            if (fileLock != null) {
+                unlock(fileLock);
+            }
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public void compact() throws IOException {
+        this.lock.writeLock().lock();
+        FileLock fileLock = null;
+        try {
+            fileLock = this.lockFile();
+            this.compactLocked();
+        } finally {
+            if (fileLock != null) {
+                unlock(fileLock);
+            }
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        if (this.garbage == 0) {
+            return;
+        }
+        File temp = new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+        long[] offsets = new long[SLOT_COUNT];
+        long end = DATA_START;
+        try (RandomAccessFile output = new RandomAccessFile(temp, "rw")) {
+            FileChannel target = output.getChannel();
+            target.truncate(0);
+            ByteBuffer index = ByteBuffer.allocate((int) DATA_START).order(ByteOrder.LITTLE_ENDIAN);
+            index.putInt(MAGIC);
+            index.putInt(VERSION);
+            index.putInt(SIZE);
+            index.putInt(0);
+            index.putLong(0);
+            index.putLong(0);
+            for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                int length = this.lengths[slot];
+                if (length > 0) {
+                    long transferred = 0;
+                    while (transferred < length) {
+                        transferred += this.channel.transferTo(this.offsets[slot] + transferred, length - transferred, target.position(end + transferred));
+                    }
+                    offsets[slot] = end;
+                    end += length;
+                }
+                index.putLong(offsets[slot]);
+                index.putInt(length);
+                index.putLong(this.stamps[slot]);
+            }
+            index.putLong(16, end);
+            index.flip();
+            while (index.hasRemaining()) {
+                target.write(index, index.position());
+            }
+        } catch (IOException e) {
+            this.onCompactFailed(temp, e);
+            return;
+        }
+
+        IOException failure = this.replaceWith(temp);
+        if (failure == null) {
+            ByteBuffer flags = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, FLAG_REPLACED);
+            try {
+                this.channel.write(flags, 12);
+            } catch (IOException e) {
+                Earth.LOGGER.warn("Failed to mark replaced OSM tile pack {}", this.file, e);
+            }
+        }
+        this.access.close();
+        if (failure != null) {
+            failure = this.replaceWith(temp);
+            if (failure != null) {
+                this.openChannel();
+                this.onCompactFailed(temp, failure);
+                return;
+            }
+        }
+        this.openChannel();
+        System.arraycopy(offsets, 0, this.offsets, 0, SLOT_COUNT);
+        this.end = end;
+        this.garbage = 0;
+        this.compactThreshold = COMPACT_MIN_GARBAGE;
+    }
+
+    private IOException replaceWith(File temp) {
+        try {
+            Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    private void onCompactFailed(File temp, IOException e) {
+        Earth.LOGGER.warn("Failed to compact OSM tile pack {}", this.file, e);
+        if (temp.exists() && !temp.delete()) {
+            Earth.LOGGER.warn("Failed to delete {}", temp);
+        }
+        this.compactThreshold = Math.max(COMPACT_MIN_GARBAGE, this.garbage * 2);
+    }
+
+    public boolean contains(int tileLat, int tileLon) {
+        this.lock.readLock().lock();
+        try {
+            return this.lengths[getSlot(tileLat, tileLon)] > 0;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int getLength(int tileLat, int tileLon) {
+        this.lock.readLock().lock();
+        try {
+            return this.lengths[getSlot(tileLat, tileLon)];
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public long getStamp(int tileLat, int tileLon) {
+        this.lock.readLock().lock();
+        try {
+            return this.stamps[getSlot(tileLat, tileLon)];
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int getTileCount() {
+        this.lock.readLock().lock();
+        try {
+            int count = 0;
+            for (int length : this.lengths) {
+                if (length > 0) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public long getGarbage() {
+        return this.garbage;
+    }
+
+    public long getSize() {
+        return this.end;
+    }
+
+    public void close() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            this.access.close();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+}
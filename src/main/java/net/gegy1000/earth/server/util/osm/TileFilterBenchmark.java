@@ -0,0 +1,59 @@
+package net.gegy1000.earth.server.util.osm;
+
+import net.gegy1000.earth.server.util.osm.xml.XmlIterator;
+import net.gegy1000.earth.server.world.gen.raster.object.ObjectRasterization;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+public class TileFilterBenchmark {
+    private static final int ITERATIONS = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: TileFilterBenchmark <file.osm>...");
+            return;
+        }
+        for (String path : args) {
+            byte[] xml = Files.readAllBytes(new File(path).toPath());
+            byte[] full = OpenStreetMap.encode(new XmlIterator(new ByteArrayInputStream(xml), false));
+            byte[] filtered = OpenStreetMap.encode(new XmlIterator(new ByteArrayInputStream(xml), false), OsmTileFilter.RENDERED);
+
+            int fullRendered = countRendered(OpenStreetMap.parse(full));
+            int filteredRendered = countRendered(OpenStreetMap.parse(filtered));
+            if (fullRendered != filteredRendered) {
+                throw new IOException(path + " rendered " + filteredRendered + " objects after filtering, expected " + fullRendered);
+            }
+
+            long fullTime = time(full);
+            long filteredTime = time(filtered);
+            System.out.printf("%s: %d rendered objects%n", path, fullRendered);
+            System.out.printf("Tile: %d -> %d bytes (%.1f%% saved)%n", full.length, filtered.length, 100.0 * (full.length - filtered.length) / full.length);
+            System.out.printf("Parse: %.1fms -> %.1fms (%.1f%% faster)%n", fullTime / 1e6, filteredTime / 1e6, 100.0 * (fullTime - filteredTime) / fullTime);
+        }
+        System.out.printf("Kept %d of %d entities, %d of %d tags%n", OsmTileFilter.getOutputEntities(), OsmTileFilter.getInputEntities(), OsmTileFilter.getOutputTags(), OsmTileFilter.getInputTags());
+    }
+
+    private static int countRendered(List<MapObject> objects) {
+        int count = 0;
+        for (MapObject object : objects) {
+            if (ObjectRasterization.get(object) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long time(byte[] data) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            OpenStreetMap.parse(data);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,599 @@
+package net.gegy1000.earth.server.util.osm.extract;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmEntity;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+import de.topobyte.osm4j.core.model.impl.Bounds;
+import de.topobyte.osm4j.core.model.impl.Relation;
+import de.topobyte.osm4j.core.model.impl.RelationMember;
+import de.topobyte.osm4j.core.model.impl.Tag;
+import de.topobyte.osm4j.core.model.impl.Way;
+import gnu.trove.list.array.TLongArrayList;
+import net.gegy1000.earth.server.util.osm.FixedNode;
+import net.gegy1000.earth.server.util.osm.MapTile;
+import net.gegy1000.earth.server.util.osm.OpenStreetMap;
+import net.gegy1000.earth.server.util.osm.OsmTileFilter;
+import net.gegy1000.earth.server.util.osm.OsmTileFormat;
+import net.gegy1000.earth.server.util.osm.OsmTilePack;
+import net.gegy1000.earth.server.util.osm.pbf.PbfIterator;
+import net.gegy1000.earth.server.util.osm.xml.XmlIterator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+public class OsmExtractImporter implements Closeable {
+    private static final long TILE_SIZE = Math.round(MapTile.SIZE * OsmTileFormat.COORDINATE_SCALE);
+    private static final long MISSING = Long.MIN_VALUE;
+    private static final long MAX_EMPTY_TILES = 4000000;
+
+    private static final int RECORD_HEADER_SIZE = 13;
+    private static final int RECORD_WAY = 1;
+    private static final int RECORD_RELATION = 2;
+
+    private static final int SORT_SLOT_BUFFER = 64 * 1024;
+    private static final long SORT_BUFFER = 32 * 1024 * 1024;
+
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final File output;
+    private final OsmTileFilter filter;
+    private final File temp;
+
+    private final SortedLongStore nodes;
+    private final SortedLongStore ways;
+    private final File wayCellFile;
+    private final DataOutputStream wayCells;
+    private long wayCellOffset;
+    private RandomAccessFile wayCellAccess;
+    private ByteBuffer wayCellBuffer = ByteBuffer.allocate(4096);
+    private final TileSpill spill;
+
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+    private final DataOutputStream recordOutput = new DataOutputStream(this.record);
+    private final Set<Long> cells = new HashSet<>();
+    private long[] refs = new long[256];
+    private int[] latitudes = new int[256];
+    private int[] longitudes = new int[256];
+
+    private EntityType phase = EntityType.Node;
+    private OsmBounds bounds;
+
+    private long nodeCount;
+    private long wayCount;
+    private long relationCount;
+    private long missingNodes;
+    private long tileCount;
+
+    private long startTime;
+    private long lastReport;
+
+    public OsmExtractImporter(File output) throws IOException {
+        this(output, null);
+    }
+
+    public OsmExtractImporter(File output, OsmTileFilter filter) throws IOException {
+        this.output = output;
+        this.filter = filter;
+        this.temp = Files.createTempDirectory("earth-import").toFile();
+        this.nodes = new SortedLongStore(new File(this.temp, "nodes.bin"));
+        this.ways = new SortedLongStore(new File(this.temp, "ways.bin"));
+        this.wayCellFile = new File(this.temp, "way_cells.bin");
+        this.wayCells = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.wayCellFile), 65536));
+        this.spill = new TileSpill(this.temp);
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean unfiltered = args.length > 0 && args[0].equals("--unfiltered");
+        int argIndex = unfiltered ? 1 : 0;
+        if (args.length <= argIndex) {
+            System.out.println("Usage: OsmExtractImporter [--unfiltered] <extract.osm[.gz]|extract.osm.pbf> [cache directory]");
+            return;
+        }
+        File input = new File(args[argIndex]);
+        File output = args.length > argIndex + 1 ? new File(args[argIndex + 1]) : OpenStreetMap.CACHE;
+        OsmTileFilter filter = unfiltered ? null : OsmTileFilter.RENDERED;
+        try (InputStream in = open(input); OsmExtractImporter importer = new OsmExtractImporter(output, filter)) {
+            importer.run(input.getName().endsWith(".pbf") ? new PbfIterator(in) : new XmlIterator(in, false));
+        }
+    }
+
+    private static InputStream open(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 65536);
+        if (file.getName().endsWith(".gz")) {
+            return new GZIPInputStream(in, 65536);
+        }
+        return in;
+    }
+
+    public void run(OsmIterator iterator) throws IOException {
+        this.startTime = System.nanoTime();
+        this.lastReport = this.startTime;
+        if (iterator.hasBounds()) {
+            this.bounds = iterator.getBounds();
+        }
+        while (iterator.hasNext()) {
+            EntityContainer container = iterator.next();
+            this.advancePhase(container.getType());
+            switch (container.getType()) {
+                case Node:
+                    this.addNode((OsmNode) container.getEntity());
+                    break;
+                case Way:
+                    this.addWay((OsmWay) container.getEntity());
+                    break;
+                case Relation:
+                    this.addRelation((OsmRelation) container.getEntity());
+                    break;
+            }
+            long time = System.nanoTime();
+            if (time - this.lastReport > REPORT_INTERVAL) {
+                this.report(time);
+                this.lastReport = time;
+            }
+        }
+        this.advancePhase(null);
+        this.spill.flush();
+        long readTime = System.nanoTime() - this.startTime;
+
+        for (long pack : this.spill.getPacks()) {
+            this.writePack(pack, this.spill.getFile(pack));
+        }
+        this.writeEmptyTiles();
+
+        long entities = this.nodeCount + this.wayCount + this.relationCount;
+        double seconds = (System.nanoTime() - this.startTime) / 1e9;
+        System.out.printf("Imported %d nodes, %d ways, %d relations into %d tiles in %.1fs%n", this.nodeCount, this.wayCount, this.relationCount, this.tileCount, seconds);
+        System.out.printf("Read %.0f entities/sec, %.0f entities/sec overall, %d bytes spilled, %d missing node refs%n", entities / (readTime / 1e9), entities / seconds, this.spill.getBytes(), this.missingNodes);
+        if (this.filter != null) {
+            System.out.printf("Filter kept %d of %d tile entities%n", OsmTileFilter.getOutputEntities(), OsmTileFilter.getInputEntities());
+        }
+    }
+
+    private void report(long time) {
+        long entities = this.nodeCount + this.wayCount + this.relationCount;
+        double seconds = (time - this.startTime) / 1e9;
+        System.out.printf("%d nodes, %d ways, %d relations (%.0f entities/sec)%n", this.nodeCount, this.wayCount, this.relationCount, entities / seconds);
+    }
+
+    private void advancePhase(EntityType type) throws IOException {
+        if (type == this.phase) {
+            return;
+        }
+        if (type != null && this.phase != null && type.ordinal() < this.phase.ordinal()) {
+            throw new IOException("Extract must be ordered as nodes, ways, relations");
+        }
+        if (this.phase == EntityType.Node) {
+            this.nodes.finish();
+        }
+        if (this.phase == EntityType.Node || this.phase == EntityType.Way) {
+            if (type != EntityType.Way) {
+                this.ways.finish();
+                this.wayCells.close();
+                this.wayCellAccess = new RandomAccessFile(this.wayCellFile, "r");
+            }
+        }
+        this.phase = type;
+    }
+
+    private void addNode(OsmNode node) throws IOException {
+        long latitude = FixedNode.getFixedLatitude(node);
+        long longitude = FixedNode.getFixedLongitude(node);
+        this.nodes.append(node.getId(), latitude << 32 | (longitude & 0xFFFFFFFFL));
+        this.nodeCount++;
+    }
+
+    private void addWay(OsmWay way) throws IOException {
+        int nodeCount = way.getNumberOfNodes();
+        if (nodeCount > this.refs.length) {
+            int capacity = Math.max(nodeCount, this.refs.length * 2);
+            this.refs = new long[capacity];
+            this.latitudes = new int[capacity];
+            this.longitudes = new int[capacity];
+        }
+        int resolved = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            long ref = way.getNodeId(i);
+            long coordinate = this.nodes.get(ref, MISSING);
+            if (coordinate == MISSING) {
+                this.missingNodes++;
+                continue;
+            }
+            this.refs[resolved] = ref;
+            this.latitudes[resolved] = (int) (coordinate >> 32);
+            this.longitudes[resolved] = (int) coordinate;
+            resolved++;
+        }
+
+        this.record.reset();
+        this.recordOutput.writeLong(way.getId());
+        this.writeTags(way);
+        this.recordOutput.writeInt(resolved);
+        for (int i = 0; i < resolved; i++) {
+            this.recordOutput.writeLong(this.refs[i]);
+            this.recordOutput.writeInt(this.latitudes[i]);
+            this.recordOutput.writeInt(this.longitudes[i]);
+        }
+
+        this.cells.clear();
+        for (int i = 0; i < resolved; i++) {
+            int previous = Math.max(i - 1, 0);
+            int minLat = getCell(Math.min(this.latitudes[previous], this.latitudes[i]));
+            int maxLat = getCell(Math.max(this.latitudes[previous], this.latitudes[i]));
+            int minLon = getCell(Math.min(this.longitudes[previous], this.longitudes[i]));
+            int maxLon = getCell(Math.max(this.longitudes[previous], this.longitudes[i]));
+            for (int cellLat = minLat; cellLat <= maxLat; cellLat++) {
+                for (int cellLon = minLon; cellLon <= maxLon; cellLon++) {
+                    this.cells.add(TileSpill.toKey(cellLat, cellLon));
+                }
+            }
+        }
+
+        byte[] body = this.record.toByteArray();
+        this.ways.append(way.getId(), this.wayCellOffset);
+        this.wayCells.writeInt(this.cells.size());
+        for (long cell : this.cells) {
+            this.wayCells.writeLong(cell);
+            this.spill.write(TileSpill.getX(cell), TileSpill.getY(cell), RECORD_WAY, body, body.length);
+        }
+        this.wayCellOffset += 4 + this.cells.size() * 8L;
+        this.wayCount++;
+    }
+
+    private void addRelation(OsmRelation relation) throws IOException {
+        this.record.reset();
+        this.recordOutput.writeLong(relation.getId());
+        this.writeTags(relation);
+        int memberCount = relation.getNumberOfMembers();
+        this.recordOutput.writeInt(memberCount);
+        this.cells.clear();
+        for (int i = 0; i < memberCount; i++) {
+            OsmRelationMember member = relation.getMember(i);
+            this.recordOutput.writeByte(member.getType().ordinal());
+            this.recordOutput.writeLong(member.getId());
+            this.recordOutput.writeUTF(member.getRole() != null ? member.getRole() : "");
+            if (member.getType() == EntityType.Way) {
+                long offset = this.ways.get(member.getId(), MISSING);
+                if (offset != MISSING) {
+                    this.readWayCells(offset);
+                }
+            }
+        }
+        byte[] body = this.record.toByteArray();
+        for (long cell : this.cells) {
+            this.spill.write(TileSpill.getX(cell), TileSpill.getY(cell), RECORD_RELATION, body, body.length);
+        }
+        this.relationCount++;
+    }
+
+    private void readWayCells(long offset) throws IOException {
+        ByteBuffer buffer = this.readWayCellBytes(offset, 4, this.wayCellBuffer.capacity());
+        int cellCount = buffer.getInt();
+        int length = 4 + cellCount * 8;
+        if (buffer.limit() < length) {
+            buffer = this.readWayCellBytes(offset, length, length);
+            buffer.position(4);
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            this.cells.add(buffer.getLong());
+        }
+    }
+
+    private ByteBuffer readWayCellBytes(long offset, int minLength, int maxLength) throws IOException {
+        if (this.wayCellBuffer.capacity() < maxLength) {
+            this.wayCellBuffer = ByteBuffer.allocate(Math.max(maxLength, this.wayCellBuffer.capacity() * 2));
+        }
+        ByteBuffer buffer = this.wayCellBuffer;
+        buffer.clear();
+        buffer.limit(maxLength);
+        FileChannel channel = this.wayCellAccess.getChannel();
+        while (buffer.position() < minLength) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated way cell file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void writeTags(OsmEntity entity) throws IOException {
+        if (this.filter != null) {
+            List<OsmTag> tags = this.filter.filterTags(entity);
+            this.recordOutput.writeShort(tags.size());
+            for (OsmTag tag : tags) {
+                this.recordOutput.writeUTF(tag.getKey());
+                this.recordOutput.writeUTF(tag.getValue());
+            }
+            return;
+        }
+        int tagCount = entity.getNumberOfTags();
+        this.recordOutput.writeShort(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            OsmTag tag = entity.getTag(i);
+            this.recordOutput.writeUTF(tag.getKey());
+            this.recordOutput.writeUTF(tag.getValue());
+        }
+    }
+
+    private static int getCell(long coordinate) {
+        return (int) Math.floorDiv(coordinate, TILE_SIZE);
+    }
+
+    private void writePack(long pack, File file) throws IOException {
+        long[] sizes = new long[OsmTilePack.SLOT_COUNT];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            while (true) {
+                int tileLat;
+                try {
+                    tileLat = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int tileLon = in.readInt();
+                in.readByte();
+                int length = in.readInt();
+                skipFully(in, length);
+                sizes[getSlot(tileLat, tileLon)] += RECORD_HEADER_SIZE + length;
+            }
+        }
+
+        File sorted = new File(this.temp, file.getName() + ".sorted");
+        this.sortSpill(file, sorted, sizes);
+
+        int packLat = TileSpill.getX(pack) * OsmTilePack.SIZE;
+        int packLon = TileSpill.getY(pack) * OsmTilePack.SIZE;
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(65536);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sorted), 65536))) {
+            for (int slot = 0; slot < OsmTilePack.SLOT_COUNT; slot++) {
+                long remaining = sizes[slot];
+                if (remaining == 0) {
+                    continue;
+                }
+                TileContents contents = new TileContents();
+                while (remaining > 0) {
+                    in.readInt();
+                    in.readInt();
+                    int type = in.readByte();
+                    int length = in.readInt();
+                    if (type == RECORD_WAY) {
+                        contents.readWay(in);
+                    } else if (type == RECORD_RELATION) {
+                        contents.readRelation(in);
+                    } else {
+                        skipFully(in, length);
+                    }
+                    remaining -= RECORD_HEADER_SIZE + length;
+                }
+                int tileLat = packLat + slot / OsmTilePack.SIZE;
+                int tileLon = packLon + slot % OsmTilePack.SIZE;
+                encoded.reset();
+                List<OsmNode> nodes = new ArrayList<>(contents.nodes.values());
+                List<OsmWay> ways = new ArrayList<>(contents.ways.values());
+                List<OsmRelation> relations = new ArrayList<>(contents.relations.values());
+                if (this.filter != null) {
+                    this.filter.write(getBounds(tileLat, tileLon), nodes, ways, relations, encoded);
+                } else {
+                    OsmTileFormat.write(getBounds(tileLat, tileLon), nodes, ways, relations, encoded);
+                }
+                OpenStreetMap.getPack(OsmTilePack.getFile(this.output, tileLat, tileLon)).write(tileLat, tileLon, encoded.toByteArray());
+                this.tileCount++;
+            }
+        } finally {
+            if (!sorted.delete()) {
+                sorted.deleteOnExit();
+            }
+        }
+    }
+
+    private void sortSpill(File file, File sorted, long[] sizes) throws IOException {
+        long[] positions = new long[sizes.length];
+        for (int slot = 1; slot < sizes.length; slot++) {
+            positions[slot] = positions[slot - 1] + sizes[slot - 1];
+        }
+        ByteArrayOutputStream[] buffers = new ByteArrayOutputStream[sizes.length];
+        long buffered = 0;
+        byte[] body = new byte[1024];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+             RandomAccessFile output = new RandomAccessFile(sorted, "rw")) {
+            FileChannel channel = output.getChannel();
+            channel.truncate(0);
+            while (true) {
+                int tileLat;
+                try {
+                    tileLat = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int tileLon = in.readInt();
+                int type = in.readByte();
+                int length = in.readInt();
+                if (body.length < length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                in.readFully(body, 0, length);
+
+                int slot = getSlot(tileLat, tileLon);
+                ByteArrayOutputStream buffer = buffers[slot];
+                if (buffer == null) {
+                    buffer = new ByteArrayOutputStream(1024);
+                    buffers[slot] = buffer;
+                }
+                DataOutputStream record = new DataOutputStream(buffer);
+                record.writeInt(tileLat);
+                record.writeInt(tileLon);
+                record.writeByte(type);
+                record.writeInt(length);
+                record.write(body, 0, length);
+                buffered += RECORD_HEADER_SIZE + length;
+
+                if (buffer.size() >= SORT_SLOT_BUFFER) {
+                    buffered -= buffer.size();
+                    positions[slot] = writeSorted(channel, buffer, positions[slot]);
+                }
+                if (buffered >= SORT_BUFFER) {
+                    for (int i = 0; i < buffers.length; i++) {
+                        if (buffers[i] != null && buffers[i].size() > 0) {
+                            positions[i] = writeSorted(channel, buffers[i], positions[i]);
+                        }
+                    }
+                    buffered = 0;
+                }
+            }
+            for (int i = 0; i < buffers.length; i++) {
+                if (buffers[i] != null && buffers[i].size() > 0) {
+                    positions[i] = writeSorted(channel, buffers[i], positions[i]);
+                }
+            }
+        }
+    }
+
+    private static long writeSorted(FileChannel channel, ByteArrayOutputStream buffer, long position) throws IOException {
+        ByteBuffer source = ByteBuffer.wrap(buffer.toByteArray());
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+        buffer.reset();
+        return position;
+    }
+
+    private static int getSlot(int tileLat, int tileLon) {
+        return Math.floorMod(tileLat, OsmTilePack.SIZE) * OsmTilePack.SIZE + Math.floorMod(tileLon, OsmTilePack.SIZE);
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+                throw new EOFException("Truncated tile spill");
+            }
+            length -= skipped;
+        }
+    }
+
+    private void writeEmptyTiles() throws IOException {
+        if (this.bounds == null) {
+            return;
+        }
+        int minLat = getCell(OsmTileFormat.toFixed(this.bounds.getBottom()));
+        int maxLat = getCell(OsmTileFormat.toFixed(this.bounds.getTop()));
+        int minLon = getCell(OsmTileFormat.toFixed(this.bounds.getLeft()));
+        int maxLon = getCell(OsmTileFormat.toFixed(this.bounds.getRight()));
+        long area = (long) (maxLat - minLat + 1) * (maxLon - minLon + 1);
+        if (area > MAX_EMPTY_TILES) {
+            System.out.printf("Extract bounds cover %d tiles, not filling empty tiles%n", area);
+            return;
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        for (int tileLat = minLat; tileLat <= maxLat; tileLat++) {
+            for (int tileLon = minLon; tileLon <= maxLon; tileLon++) {
+                OsmTilePack pack = OpenStreetMap.getPack(OsmTilePack.getFile(this.output, tileLat, tileLon));
+                if (!pack.contains(tileLat, tileLon)) {
+                    encoded.reset();
+                    OsmTileFormat.write(getBounds(tileLat, tileLon), new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), encoded);
+                    pack.write(tileLat, tileLon, encoded.toByteArray());
+                    this.tileCount++;
+                }
+            }
+        }
+    }
+
+    private static OsmBounds getBounds(int tileLat, int tileLon) {
+        double minLat = tileLat * TILE_SIZE / OsmTileFormat.COORDINATE_SCALE;
+        double minLon = tileLon * TILE_SIZE / OsmTileFormat.COORDINATE_SCALE;
+        double maxLat = (tileLat + 1) * TILE_SIZE / OsmTileFormat.COORDINATE_SCALE;
+        double maxLon = (tileLon + 1) * TILE_SIZE / OsmTileFormat.COORDINATE_SCALE;
+        return new Bounds(minLon, maxLon, maxLat, minLat);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.nodes.close();
+        this.ways.close();
+        this.wayCells.close();
+        if (this.wayCellAccess != null) {
+            this.wayCellAccess.close();
+        }
+        this.spill.close();
+        OpenStreetMap.closePacks();
+        File[] files = this.temp.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.temp.delete();
+    }
+
+    private static class TileContents {
+        private final Map<Long, OsmNode> nodes = new TreeMap<>();
+        private final Map<Long, OsmWay> ways = new TreeMap<>();
+        private final Map<Long, OsmRelation> relations = new TreeMap<>();
+
+        void readWay(DataInputStream in) throws IOException {
+            long id = in.readLong();
+            List<OsmTag> tags = readTags(in);
+            int nodeCount = in.readInt();
+            TLongArrayList refs = new TLongArrayList(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                long ref = in.readLong();
+                int latitude = in.readInt();
+                int longitude = in.readInt();
+                refs.add(ref);
+                if (!this.nodes.containsKey(ref)) {
+                    this.nodes.put(ref, new FixedNode(ref, latitude, longitude));
+                }
+            }
+            this.ways.put(id, new Way(id, refs, tags));
+        }
+
+        void readRelation(DataInputStream in) throws IOException {
+            long id = in.readLong();
+            List<OsmTag> tags = readTags(in);
+            int memberCount = in.readInt();
+            List<OsmRelationMember> members = new ArrayList<>(memberCount);
+            for (int i = 0; i < memberCount; i++) {
+                EntityType type = EntityType.values()[in.readByte()];
+                long ref = in.readLong();
+                members.add(new RelationMember(ref, type, in.readUTF()));
+            }
+            this.relations.put(id, new Relation(id, members, tags));
+        }
+
+        private static List<OsmTag> readTags(DataInputStream in) throws IOException {
+            int tagCount = in.readUnsignedShort();
+            List<OsmTag> tags = new ArrayList<>(tagCount);
+            for (int i = 0; i < tagCount; i++) {
+                tags.add(new Tag(in.readUTF(), in.readUTF()));
+            }
+            return tags;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package net.gegy1000.earth.server.util.osm.extract;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class SortedLongStore implements Closeable {
+    private static final int ENTRY_SIZE = 16;
+    private static final int SAMPLE_INTERVAL = 1024;
+    private static final long SEGMENT_ENTRIES = 1 << 26;
+
+    private final File file;
+    private DataOutputStream output;
+
+    private long[] samples = new long[256];
+    private int sampleCount;
+    private long count;
+    private long lastKey = Long.MIN_VALUE;
+
+    private RandomAccessFile access;
+    private MappedByteBuffer[] segments;
+
+    public SortedLongStore(File file) throws IOException {
+        this.file = file;
+        this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+    }
+
+    public void append(long key, long value) throws IOException {
+        if (this.output == null) {
+            throw new IllegalStateException("Store has already been finished");
+        }
+        if (key <= this.lastKey && this.count > 0) {
+            throw new IOException("Keys must be appended in ascending order (" + key + " after " + this.lastKey + ")");
+        }
+        if (this.count % SAMPLE_INTERVAL == 0) {
+            if (this.sampleCount == this.samples.length) {
+                this.samples = Arrays.copyOf(this.samples, this.samples.length * 2);
+            }
+            this.samples[this.sampleCount++] = key;
+        }
+        this.output.writeLong(key);
+        this.output.writeLong(value);
+        this.lastKey = key;
+        this.count++;
+    }
+
+    public void finish() throws IOException {
+        if (this.output == null) {
+            return;
+        }
+        this.output.close();
+        this.output = null;
+        this.access = new RandomAccessFile(this.file, "r");
+        FileChannel channel = this.access.getChannel();
+        int segmentCount = (int) ((this.count + SEGMENT_ENTRIES - 1) / SEGMENT_ENTRIES);
+        this.segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long start = i * SEGMENT_ENTRIES;
+            long entries = Math.min(SEGMENT_ENTRIES, this.count - start);
+            this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start * ENTRY_SIZE, entries * ENTRY_SIZE);
+        }
+    }
+
+    public long get(long key, long missing) {
+        if (this.segments == null) {
+            throw new IllegalStateException("Store has not been finished");
+        }
+        int sample = Arrays.binarySearch(this.samples, 0, this.sampleCount, key);
+        if (sample >= 0) {
+            return this.getValue((long) sample * SAMPLE_INTERVAL);
+        }
+        int block = -sample - 2;
+        if (block < 0) {
+            return missing;
+        }
+        long low = (long) block * SAMPLE_INTERVAL;
+        long high = Math.min(low + SAMPLE_INTERVAL, this.count) - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long middleKey = this.getKey(middle);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return this.getValue(middle);
+            }
+        }
+        return missing;
+    }
+
+    private long getKey(long index) {
+        return this.segments[(int) (index / SEGMENT_ENTRIES)].getLong((int) (index % SEGMENT_ENTRIES) * ENTRY_SIZE);
+    }
+
+    private long getValue(long index) {
+        return this.segments[(int) (index / SEGMENT_ENTRIES)].getLong((int) (index % SEGMENT_ENTRIES) * ENTRY_SIZE + 8);
+    }
+
+    public long size() {
+        return this.count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.output != null) {
+            this.output.close();
+            this.output = null;
+        }
+        if (this.access != null) {
+            this.access.close();
+            this.access = null;
+        }
+        this.segments = null;
+        if (!this.file.delete()) {
+            this.file.deleteOnExit();
+        }
+    }
+}
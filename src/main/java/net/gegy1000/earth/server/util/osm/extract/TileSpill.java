@@ -0,0 +1,104 @@
+package net.gegy1000.earth.server.util.osm.extract;
+
+import net.gegy1000.earth.server.util.osm.OsmTilePack;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class TileSpill implements Closeable {
+    private static final int MAX_OPEN = 64;
+
+    private final File directory;
+    private final Set<Long> packs = new LinkedHashSet<>();
+    private final Map<Long, DataOutputStream> streams = new LinkedHashMap<Long, DataOutputStream>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, DataOutputStream> eldest) {
+            if (this.size() > MAX_OPEN) {
+                try {
+                    eldest.getValue().close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private long bytes;
+
+    public TileSpill(File directory) {
+        this.directory = directory;
+    }
+
+    public static long toKey(int x, int y) {
+        return (long) x << 32 | (y & 0xFFFFFFFFL);
+    }
+
+    public static int getX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int getY(long key) {
+        return (int) key;
+    }
+
+    public void write(int tileLat, int tileLon, int type, byte[] body, int length) throws IOException {
+        long pack = toKey(OsmTilePack.getPackCoordinate(tileLat), OsmTilePack.getPackCoordinate(tileLon));
+        DataOutputStream stream = this.streams.get(pack);
+        if (stream == null) {
+            boolean append = !this.packs.add(pack);
+            stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.getFile(pack), append), 16384));
+            try {
+                this.streams.put(pack, stream);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        stream.writeInt(tileLat);
+        stream.writeInt(tileLon);
+        stream.writeByte(type);
+        stream.writeInt(length);
+        stream.write(body, 0, length);
+        this.bytes += length + 13;
+    }
+
+    public void flush() throws IOException {
+        for (DataOutputStream stream : this.streams.values()) {
+            stream.close();
+        }
+        this.streams.clear();
+    }
+
+    public File getFile(long pack) {
+        return new File(this.directory, getX(pack) + "_" + getY(pack) + ".spill");
+    }
+
+    public Set<Long> getPacks() {
+        return this.packs;
+    }
+
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.flush();
+        for (long pack : this.packs) {
+            File file = this.getFile(pack);
+            if (file.exists() && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
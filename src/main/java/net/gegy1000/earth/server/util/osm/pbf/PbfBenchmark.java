@@ -0,0 +1,66 @@
+package net.gegy1000.earth.server.util.osm.pbf;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.xml.dynsax.OsmXmlIterator;
+import net.gegy1000.earth.server.util.osm.EntitySummary;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+public class PbfBenchmark {
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: PbfBenchmark <file.osm> [file.osm.pbf] [threads]");
+            return;
+        }
+        File xmlFile = new File(args[0]);
+        File pbfFile = args.length > 1 ? new File(args[1]) : new File(xmlFile.getPath() + ".pbf");
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        byte[] xml = Files.readAllBytes(xmlFile.toPath());
+        if (!pbfFile.exists()) {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(pbfFile))) {
+                PbfWriter.write(new OsmXmlIterator(new ByteArrayInputStream(xml), false), out);
+            }
+        }
+        byte[] pbf = Files.readAllBytes(pbfFile.toPath());
+        System.out.printf("XML: %d bytes, PBF: %d bytes%n", xml.length, pbf.length);
+
+        EntitySummary expected = null;
+        for (int mode = 0; mode < 3; mode++) {
+            long best = Long.MAX_VALUE;
+            EntitySummary summary = null;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                OsmIterator iterator;
+                switch (mode) {
+                    case 0:
+                        iterator = new OsmXmlIterator(new ByteArrayInputStream(xml), false);
+                        break;
+                    case 1:
+                        iterator = new PbfIterator(new ByteArrayInputStream(pbf), 1);
+                        break;
+                    default:
+                        iterator = new PbfIterator(new ByteArrayInputStream(pbf), threads);
+                        break;
+                }
+                summary = EntitySummary.of(iterator);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            String name = mode == 0 ? "OsmXmlIterator" : mode == 1 ? "PbfIterator (1 thread)" : "PbfIterator (" + threads + " threads)";
+            System.out.printf("%s: %.1fms, %.0f entities/sec%n", name, best / 1e6, summary.getCount() / (best / 1e9));
+            if (expected == null) {
+                expected = summary;
+            } else if (!expected.equals(summary)) {
+                throw new IOException(name + " produced different entities than OsmXmlIterator");
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package net.gegy1000.earth.server.util.osm.pbf;
+
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.impl.Bounds;
+import de.topobyte.osm4j.core.model.impl.Relation;
+import de.topobyte.osm4j.core.model.impl.RelationMember;
+import de.topobyte.osm4j.core.model.impl.Tag;
+import de.topobyte.osm4j.core.model.impl.Way;
+import gnu.trove.list.array.TLongArrayList;
+import net.gegy1000.earth.server.util.osm.FixedNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class PbfBlockDecoder {
+    private static final Set<String> SUPPORTED_FEATURES = new HashSet<>(Arrays.asList("OsmSchema-V0.6", "DenseNodes"));
+    private static final EntityType[] MEMBER_TYPES = { EntityType.Node, EntityType.Way, EntityType.Relation };
+    private static final double COORDINATE_SCALE = 1e9;
+    private static final long NANODEGREES_PER_FIXED = 100;
+
+    public static byte[] readBlob(byte[] blob) throws IOException {
+        ProtoReader reader = new ProtoReader(blob);
+        byte[] raw = null;
+        int rawSize = -1;
+        int zlibOffset = -1;
+        int zlibLength = 0;
+        while (reader.next()) {
+            switch (reader.getField()) {
+                case 1:
+                    raw = reader.readBytes();
+                    break;
+                case 2:
+                    rawSize = reader.readInt();
+                    break;
+                case 3:
+                    zlibLength = reader.readLength();
+                    zlibOffset = reader.getPosition();
+                    reader.skipBytes(zlibLength);
+                    break;
+                case 4:
+                case 5:
+                case 6:
+                case 7:
+                    throw new IOException("Unsupported PBF blob compression " + reader.getField());
+                default:
+                    reader.skip();
+                    break;
+            }
+        }
+        if (raw != null) {
+            return raw;
+        }
+        if (zlibOffset < 0) {
+            throw new IOException("PBF blob has no data");
+        }
+        return inflate(blob, zlibOffset, zlibLength, rawSize);
+    }
+
+    private static byte[] inflate(byte[] blob, int offset, int length, int rawSize) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(blob, offset, length);
+        try {
+            if (rawSize >= 0) {
+                byte[] data = new byte[rawSize];
+                int read = 0;
+                while (read < rawSize && !inflater.finished()) {
+                    int count = inflater.inflate(data, read, rawSize - read);
+                    if (count == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    read += count;
+                }
+                if (read != rawSize) {
+                    throw new IOException("PBF blob inflated to " + read + " bytes, expected " + rawSize);
+                }
+                return data;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length * 4);
+            byte[] chunk = new byte[16384];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(chunk);
+                if (count == 0 && inflater.needsInput()) {
+                    throw new IOException("Truncated PBF blob");
+                }
+                out.write(chunk, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt PBF blob", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public static OsmBounds readHeader(byte[] data) throws IOException {
+        ProtoReader reader = new ProtoReader(data);
+        OsmBounds bounds = null;
+        while (reader.next()) {
+            switch (reader.getField()) {
+                case 1:
+                    bounds = readBounds(reader.readMessage());
+                    break;
+                case 4:
+                    String feature = reader.readString();
+                    if (!SUPPORTED_FEATURES.contains(feature)) {
+                        throw new IOException("Unsupported PBF feature " + feature);
+                    }
+                    break;
+                default:
+                    reader.skip();
+                    break;
+            }
+        }
+        return bounds;
+    }
+
+    private static OsmBounds readBounds(ProtoReader reader) throws IOException {
+        long left = 0;
+        long right = 0;
+        long top = 0;
+        long bottom = 0;
+        while (reader.next()) {
+            switch (reader.getField()) {
+                case 1:
+                    left = reader.readSigned();
+                    break;
+                case 2:
+                    right = reader.readSigned();
+                    break;
+                case 3:
+                    top = reader.readSigned();
+                    break;
+                case 4:
+                    bottom = reader.readSigned();
+                    break;
+                default:
+                    reader.skip();
+                    break;
+            }
+        }
+        return new Bounds(left / COORDINATE_SCALE, right / COORDINATE_SCALE, top / COORDINATE_SCALE, bottom / COORDINATE_SCALE);
+    }
+
+    public static List<EntityContainer> readPrimitiveBlock(byte[] data) throws IOException {
+        ProtoReader reader = new ProtoReader(data);
+        String[] strings = new String[0];
+        List<ProtoReader> groups = new ArrayList<>();
+        int granularity = 100;
+        long latOffset = 0;
+        long lonOffset = 0;
+        while (reader.next()) {
+            switch (reader.getField()) {
+                case 1:
+                    strings = readStringTable(reader.readMessage());
+                    break;
+                case 2:
+                    groups.add(reader.readMessage());
+                    break;
+                case 17:
+                    granularity = reader.readInt();
+                    break;
+                case 19:
+                    latOffset = reader.readVarint();
+                    break;
+                case 20:
+                    lonOffset = reader.readVarint();
+                    break;
+                default:
+                    reader.skip();
+                    break;
+            }
+        }
+        if (groups.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Block block = new Block(strings, granularity, latOffset, lonOffset);
+        for (ProtoReader group : groups) {
+            block.readGroup(group);
+        }
+        return block.entities;
+    }
+
+    private static String[] readStringTable(ProtoReader reader) throws IOException {
+        List<String> strings = new ArrayList<>();
+        while (reader.next()) {
+            if (reader.getField() == 1) {
+                strings.add(reader.readString());
+            } else {
+                reader.skip();
+            }
+        }
+        return strings.toArray(new String[0]);
+    }
+
+    private static class Block {
+        private final String[] strings;
+        private final int granularity;
+        private final long latOffset;
+        private final long lonOffset;
+        private final List<EntityContainer> entities = new ArrayList<>(8000);
+
+        Block(String[] strings, int granularity, long latOffset, long lonOffset) {
+            this.strings = strings;
+            this.granularity = granularity;
+            this.latOffset = latOffset;
+            this.lonOffset = lonOffset;
+        }
+
+        private int toFixedLatitude(long latitude) {
+            return toFixed(this.latOffset + (long) this.granularity * latitude);
+        }
+
+        private int toFixedLongitude(long longitude) {
+            return toFixed(this.lonOffset + (long) this.granularity * longitude);
+        }
+
+        private static int toFixed(long nanodegrees) {
+            return (int) Math.floorDiv(nanodegrees + NANODEGREES_PER_FIXED / 2, NANODEGREES_PER_FIXED);
+        }
+
+        private String getString(int index) throws IOException {
+            if (index < 0 || index >= this.strings.length) {
+                throw new IOException("String index " + index + " out of range");
+            }
+            return this.strings[index];
+        }
+
+        void readGroup(ProtoReader reader) throws IOException {
+            while (reader.next()) {
+                switch (reader.getField()) {
+                    case 1:
+                        this.readNode(reader.readMessage());
+                        break;
+                    case 2:
+                        this.readDenseNodes(reader.readMessage());
+                        break;
+                    case 3:
+                        this.readWay(reader.readMessage());
+                        break;
+                    case 4:
+                        this.readRelation(reader.readMessage());
+                        break;
+                    default:
+                        reader.skip();
+                        break;
+                }
+            }
+        }
+
+        private void readNode(ProtoReader reader) throws IOException {
+            long id = 0;
+            long latitude = 0;
+            long longitude = 0;
+            ProtoReader keys = null;
+            ProtoReader values = null;
+            while (reader.next()) {
+                switch (reader.getField()) {
+                    case 1:
+                        id = reader.readSigned();
+                        break;
+                    case 2:
+                        keys = reader.readPacked();
+                        break;
+                    case 3:
+                        values = reader.readPacked();
+                        break;
+                    case 8:
+                        latitude = reader.readSigned();
+                        break;
+                    case 9:
+                        longitude = reader.readSigned();
+                        break;
+                    default:
+                        reader.skip();
+                        break;
+                }
+            }
+            FixedNode node = new FixedNode(id, this.toFixedLatitude(latitude), this.toFixedLongitude(longitude), this.readTags(keys, values), null);
+            this.entities.add(new EntityContainer(EntityType.Node, node));
+        }
+
+        private void readDenseNodes(ProtoReader reader) throws IOException {
+            ProtoReader ids = null;
+            ProtoReader latitudes = null;
+            ProtoReader longitudes = null;
+            ProtoReader keysValues = null;
+            while (reader.next()) {
+                switch (reader.getField()) {
+                    case 1:
+                        ids = reader.readPacked();
+                        break;
+                    case 8:
+                        latitudes = reader.readPacked();
+                        break;
+                    case 9:
+                        longitudes = reader.readPacked();
+                        break;
+                    case 10:
+                        keysValues = reader.readPacked();
+                        break;
+                    default:
+                        reader.skip();
+                        break;
+                }
+            }
+            if (ids == null || latitudes == null || longitudes == null) {
+                return;
+            }
+            long id = 0;
+            long latitude = 0;
+            long longitude = 0;
+            while (ids.hasRemaining()) {
+                id += ids.readSigned();
+                latitude += latitudes.readSigned();
+                longitude += longitudes.readSigned();
+                List<OsmTag> tags = null;
+                if (keysValues != null) {
+                    while (keysValues.hasRemaining()) {
+                        int key = keysValues.readInt();
+                        if (key == 0) {
+                            break;
+                        }
+                        if (tags == null) {
+                            tags = new ArrayList<>(4);
+                        }
+                        tags.add(new Tag(this.getString(key), this.getString(keysValues.readInt())));
+                    }
+                }
+                FixedNode node = new FixedNode(id, this.toFixedLatitude(latitude), this.toFixedLongitude(longitude), tags, null);
+                this.entities.add(new EntityContainer(EntityType.Node, node));
+            }
+        }
+
+        private void readWay(ProtoReader reader) throws IOException {
+            long id = 0;
+            ProtoReader keys = null;
+            ProtoReader values = null;
+            TLongArrayList nodes = new TLongArrayList();
+            while (reader.next()) {
+                switch (reader.getField()) {
+                    case 1:
+                        id = reader.readVarint();
+                        break;
+                    case 2:
+                        keys = reader.readPacked();
+                        break;
+                    case 3:
+                        values = reader.readPacked();
+                        break;
+                    case 8:
+                        ProtoReader refs = reader.readPacked();
+                        long ref = 0;
+                        while (refs.hasRemaining()) {
+                            ref += refs.readSigned();
+                            nodes.add(ref);
+                        }
+                        break;
+                    default:
+                        reader.skip();
+                        break;
+                }
+            }
+            Way way = new Way(id, nodes, this.readTags(keys, values));
+            this.entities.add(new EntityContainer(EntityType.Way, way));
+        }
+
+        private void readRelation(ProtoReader reader) throws IOException {
+            long id = 0;
+            ProtoReader keys = null;
+            ProtoReader values = null;
+            ProtoReader roles = null;
+            ProtoReader memberIds = null;
+            ProtoReader types = null;
+            while (reader.next()) {
+                switch (reader.getField()) {
+                    case 1:
+                        id = reader.readVarint();
+                        break;
+                    case 2:
+                        keys = reader.readPacked();
+                        break;
+                    case 3:
+                        values = reader.readPacked();
+                        break;
+                    case 8:
+                        roles = reader.readPacked();
+                        break;
+                    case 9:
+                        memberIds = reader.readPacked();
+                        break;
+                    case 10:
+                        types = reader.readPacked();
+                        break;
+                    default:
+                        reader.skip();
+                        break;
+                }
+            }
+            List<OsmRelationMember> members = new ArrayList<>();
+            if (roles != null && memberIds != null && types != null) {
+                long memberId = 0;
+                while (memberIds.hasRemaining()) {
+                    memberId += memberIds.readSigned();
+                    String role = this.getString(roles.readInt());
+                    int type = types.readInt();
+                    if (type < 0 || type >= MEMBER_TYPES.length) {
+                        throw new IOException("Unknown relation member type " + type);
+                    }
+                    members.add(new RelationMember(memberId, MEMBER_TYPES[type], role));
+                }
+            }
+            Relation relation = new Relation(id, members, this.readTags(keys, values));
+            this.entities.add(new EntityContainer(EntityType.Relation, relation));
+        }
+
+        private List<OsmTag> readTags(ProtoReader keys, ProtoReader values) throws IOException {
+            List<OsmTag> tags = new ArrayList<>(0);
+            if (keys == null || values == null) {
+                return tags;
+            }
+            while (keys.hasRemaining() && values.hasRemaining()) {
+                tags.add(new Tag(this.getString(keys.readInt()), this.getString(values.readInt())));
+            }
+            return tags;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package net.gegy1000.earth.server.util.osm.pbf;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class PbfIterator implements OsmIterator, Closeable {
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private static final String TYPE_HEADER = "OSMHeader";
+    private static final String TYPE_DATA = "OSMData";
+
+    private final DataInputStream input;
+    private final ExecutorService executor;
+    private final int readAhead;
+
+    private final Deque<Future<List<EntityContainer>>> pending = new ArrayDeque<>();
+    private final OsmBounds bounds;
+    private boolean exhausted;
+
+    private List<EntityContainer> current = Collections.emptyList();
+    private int index;
+
+    public PbfIterator(InputStream input) throws IOException {
+        this(input, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PbfIterator(InputStream input, int threads) throws IOException {
+        this.input = new DataInputStream(input);
+        if (threads > 1) {
+            this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Earth PBF Decode %d").build());
+        } else {
+            this.executor = null;
+        }
+        this.readAhead = Math.max(threads, 1) * 2;
+        try {
+            Blob header = this.readBlob();
+            if (header == null || !header.type.equals(TYPE_HEADER)) {
+                throw new IOException("PBF stream does not start with an OSMHeader block");
+            }
+            this.bounds = PbfBlockDecoder.readHeader(PbfBlockDecoder.readBlob(header.data));
+        } catch (IOException | RuntimeException e) {
+            this.close();
+            throw e;
+        }
+    }
+
+    private Blob readBlob() throws IOException {
+        int headerSize;
+        try {
+            headerSize = this.input.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+            throw new IOException("Invalid PBF blob header size " + headerSize);
+        }
+        byte[] header = new byte[headerSize];
+        this.input.readFully(header);
+        ProtoReader reader = new ProtoReader(header);
+        String type = null;
+        int dataSize = -1;
+        while (reader.next()) {
+            switch (reader.getField()) {
+                case 1:
+                    type = reader.readString();
+                    break;
+                case 3:
+                    dataSize = reader.readInt();
+                    break;
+                default:
+                    reader.skip();
+                    break;
+            }
+        }
+        if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+            throw new IOException("Invalid PBF blob header");
+        }
+        byte[] data = new byte[dataSize];
+        this.input.readFully(data);
+        return new Blob(type, data);
+    }
+
+    private void fill() throws IOException {
+        while (!this.exhausted && this.pending.size() < this.readAhead) {
+            Blob blob = this.readBlob();
+            if (blob == null) {
+                this.exhausted = true;
+                this.input.close();
+                break;
+            }
+            if (!blob.type.equals(TYPE_DATA)) {
+                continue;
+            }
+            byte[] data = blob.data;
+            if (this.executor != null) {
+                this.pending.add(this.executor.submit(() -> PbfBlockDecoder.readPrimitiveBlock(PbfBlockDecoder.readBlob(data))));
+            } else {
+                this.pending.add(CompletableFuture.completedFuture(PbfBlockDecoder.readPrimitiveBlock(PbfBlockDecoder.readBlob(data))));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasBounds() {
+        return this.bounds != null;
+    }
+
+    @Override
+    public OsmBounds getBounds() {
+        return this.bounds;
+    }
+
+    @Override
+    public Iterator<EntityContainer> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (this.index >= this.current.size()) {
+                this.fill();
+                Future<List<EntityContainer>> next = this.pending.poll();
+                if (next == null) {
+                    this.close();
+                    return false;
+                }
+                this.current = next.get();
+                this.index = 0;
+            }
+            return true;
+        } catch (IOException e) {
+            this.close();
+            throw new UncheckedIOException(e);
+        } catch (ExecutionException e) {
+            this.close();
+            throw new RuntimeException("error while processing input", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.close();
+            throw new RuntimeException("interrupted while processing input", e);
+        }
+    }
+
+    @Override
+    public EntityContainer next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException("End of stream has been reached");
+        }
+        return this.current.get(this.index++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("an iterator over osm files is read-only");
+    }
+
+    @Override
+    public void close() {
+        this.exhausted = true;
+        for (Future<List<EntityContainer>> future : this.pending) {
+            future.cancel(false);
+        }
+        this.pending.clear();
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+        try {
+            this.input.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static class Blob {
+        private final String type;
+        private final byte[] data;
+
+        Blob(String type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.gegy1000.earth.server.util.osm.pbf;
+
+import de.topobyte.osm4j.core.access.OsmHandler;
+import de.topobyte.osm4j.core.access.OsmInputException;
+import de.topobyte.osm4j.core.access.OsmReader;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class PbfReader implements OsmReader {
+    private final InputStream input;
+    private final int threads;
+    private OsmHandler handler;
+
+    public PbfReader(InputStream input) {
+        this(input, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PbfReader(InputStream input, int threads) {
+        this.input = input;
+        this.threads = threads;
+    }
+
+    @Override
+    public void setHandler(OsmHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void read() throws OsmInputException {
+        try (PbfIterator iterator = new PbfIterator(this.input, this.threads)) {
+            if (iterator.hasBounds()) {
+                this.handler.handle(iterator.getBounds());
+            }
+            while (iterator.hasNext()) {
+                EntityContainer container = iterator.next();
+                switch (container.getType()) {
+                    case Node:
+                        this.handler.handle((OsmNode) container.getEntity());
+                        break;
+                    case Way:
+                        this.handler.handle((OsmWay) container.getEntity());
+                        break;
+                    case Relation:
+                        this.handler.handle((OsmRelation) container.getEntity());
+                        break;
+                }
+            }
+            this.handler.complete();
+        } catch (IOException | RuntimeException e) {
+            throw new OsmInputException("error while reading PBF input", e);
+        }
+    }
+}
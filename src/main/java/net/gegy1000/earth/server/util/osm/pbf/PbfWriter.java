@@ -0,0 +1,233 @@
+package net.gegy1000.earth.server.util.osm.pbf;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmEntity;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+public class PbfWriter {
+    private static final int BLOCK_SIZE = 8000;
+    private static final int GRANULARITY = 100;
+
+    private final DataOutputStream output;
+    private final List<OsmEntity> batch = new ArrayList<>(BLOCK_SIZE);
+    private EntityType batchType;
+
+    public PbfWriter(OutputStream output) {
+        this.output = new DataOutputStream(output);
+    }
+
+    public static void write(OsmIterator iterator, OutputStream output) throws IOException {
+        PbfWriter writer = new PbfWriter(output);
+        writer.writeHeader(iterator.hasBounds() ? iterator.getBounds() : null);
+        while (iterator.hasNext()) {
+            EntityContainer container = iterator.next();
+            writer.write(container.getType(), container.getEntity());
+        }
+        writer.finish();
+    }
+
+    public void writeHeader(OsmBounds bounds) throws IOException {
+        ProtoWriter header = new ProtoWriter();
+        if (bounds != null) {
+            ProtoWriter box = new ProtoWriter();
+            box.writeSigned(1, Math.round(bounds.getLeft() * 1e9));
+            box.writeSigned(2, Math.round(bounds.getRight() * 1e9));
+            box.writeSigned(3, Math.round(bounds.getTop() * 1e9));
+            box.writeSigned(4, Math.round(bounds.getBottom() * 1e9));
+            header.writeMessage(1, box);
+        }
+        header.writeString(4, "OsmSchema-V0.6");
+        header.writeString(4, "DenseNodes");
+        header.writeString(16, "earth");
+        this.writeBlob("OSMHeader", header.toByteArray());
+    }
+
+    public void write(EntityType type, OsmEntity entity) throws IOException {
+        if (type != this.batchType || this.batch.size() >= BLOCK_SIZE) {
+            this.flush();
+            this.batchType = type;
+        }
+        this.batch.add(entity);
+    }
+
+    public void finish() throws IOException {
+        this.flush();
+        this.output.flush();
+    }
+
+    private void flush() throws IOException {
+        if (this.batch.isEmpty()) {
+            return;
+        }
+        StringTable strings = new StringTable();
+        ProtoWriter group = new ProtoWriter();
+        switch (this.batchType) {
+            case Node:
+                group.writeMessage(2, this.writeDenseNodes(strings));
+                break;
+            case Way:
+                for (OsmEntity entity : this.batch) {
+                    group.writeMessage(3, this.writeWay((OsmWay) entity, strings));
+                }
+                break;
+            case Relation:
+                for (OsmEntity entity : this.batch) {
+                    group.writeMessage(4, this.writeRelation((OsmRelation) entity, strings));
+                }
+                break;
+        }
+        ProtoWriter table = new ProtoWriter();
+        for (String value : strings.values) {
+            table.writeString(1, value);
+        }
+        ProtoWriter block = new ProtoWriter();
+        block.writeMessage(1, table);
+        block.writeMessage(2, group);
+        block.writeVarint(17, GRANULARITY);
+        this.writeBlob("OSMData", block.toByteArray());
+        this.batch.clear();
+    }
+
+    private ProtoWriter writeDenseNodes(StringTable strings) {
+        ProtoWriter ids = new ProtoWriter();
+        ProtoWriter latitudes = new ProtoWriter();
+        ProtoWriter longitudes = new ProtoWriter();
+        ProtoWriter keysValues = new ProtoWriter();
+        boolean tagged = false;
+        long lastId = 0;
+        long lastLatitude = 0;
+        long lastLongitude = 0;
+        for (OsmEntity entity : this.batch) {
+            OsmNode node = (OsmNode) entity;
+            long latitude = Math.round(node.getLatitude() * 1e9 / GRANULARITY);
+            long longitude = Math.round(node.getLongitude() * 1e9 / GRANULARITY);
+            ids.writeRawSigned(node.getId() - lastId);
+            latitudes.writeRawSigned(latitude - lastLatitude);
+            longitudes.writeRawSigned(longitude - lastLongitude);
+            lastId = node.getId();
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+            for (int i = 0; i < node.getNumberOfTags(); i++) {
+                OsmTag tag = node.getTag(i);
+                keysValues.writeRawVarint(strings.indexOf(tag.getKey()));
+                keysValues.writeRawVarint(strings.indexOf(tag.getValue()));
+                tagged = true;
+            }
+            keysValues.writeRawVarint(0);
+        }
+        ProtoWriter dense = new ProtoWriter();
+        dense.writeMessage(1, ids);
+        dense.writeMessage(8, latitudes);
+        dense.writeMessage(9, longitudes);
+        if (tagged) {
+            dense.writeMessage(10, keysValues);
+        }
+        return dense;
+    }
+
+    private ProtoWriter writeWay(OsmWay way, StringTable strings) {
+        ProtoWriter message = new ProtoWriter();
+        message.writeVarint(1, way.getId());
+        this.writeTags(message, way, strings);
+        ProtoWriter refs = new ProtoWriter();
+        long last = 0;
+        for (int i = 0; i < way.getNumberOfNodes(); i++) {
+            refs.writeRawSigned(way.getNodeId(i) - last);
+            last = way.getNodeId(i);
+        }
+        message.writeMessage(8, refs);
+        return message;
+    }
+
+    private ProtoWriter writeRelation(OsmRelation relation, StringTable strings) {
+        ProtoWriter message = new ProtoWriter();
+        message.writeVarint(1, relation.getId());
+        this.writeTags(message, relation, strings);
+        ProtoWriter roles = new ProtoWriter();
+        ProtoWriter ids = new ProtoWriter();
+        ProtoWriter types = new ProtoWriter();
+        long last = 0;
+        for (int i = 0; i < relation.getNumberOfMembers(); i++) {
+            OsmRelationMember member = relation.getMember(i);
+            roles.writeRawVarint(strings.indexOf(member.getRole()));
+            ids.writeRawSigned(member.getId() - last);
+            types.writeRawVarint(member.getType().ordinal());
+            last = member.getId();
+        }
+        message.writeMessage(8, roles);
+        message.writeMessage(9, ids);
+        message.writeMessage(10, types);
+        return message;
+    }
+
+    private void writeTags(ProtoWriter message, OsmEntity entity, StringTable strings) {
+        if (entity.getNumberOfTags() == 0) {
+            return;
+        }
+        ProtoWriter keys = new ProtoWriter();
+        ProtoWriter values = new ProtoWriter();
+        for (int i = 0; i < entity.getNumberOfTags(); i++) {
+            OsmTag tag = entity.getTag(i);
+            keys.writeRawVarint(strings.indexOf(tag.getKey()));
+            values.writeRawVarint(strings.indexOf(tag.getValue()));
+        }
+        message.writeMessage(2, keys);
+        message.writeMessage(3, values);
+    }
+
+    private void writeBlob(String type, byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed, new Deflater(Deflater.DEFAULT_COMPRESSION))) {
+            deflater.write(data);
+        }
+        ProtoWriter blob = new ProtoWriter();
+        blob.writeVarint(2, data.length);
+        blob.writeBytes(3, compressed.toByteArray());
+        ProtoWriter header = new ProtoWriter();
+        header.writeString(1, type);
+        header.writeVarint(3, blob.size());
+        this.output.writeInt(header.size());
+        header.writeTo(this.output);
+        blob.writeTo(this.output);
+    }
+
+    private static class StringTable {
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        StringTable() {
+            this.values.add("");
+        }
+
+        int indexOf(String value) {
+            if (value == null || value.isEmpty()) {
+                return 0;
+            }
+            Integer index = this.indices.get(value);
+            if (index == null) {
+                index = this.values.size();
+                this.indices.put(value, index);
+                this.values.add(value);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package net.gegy1000.earth.server.util.osm.pbf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ProtoReader {
+    public static final int WIRE_VARINT = 0;
+    public static final int WIRE_FIXED64 = 1;
+    public static final int WIRE_LENGTH = 2;
+    public static final int WIRE_FIXED32 = 5;
+
+    private final byte[] buffer;
+    private int position;
+    private final int limit;
+
+    private int field;
+    private int wireType;
+
+    public ProtoReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    public ProtoReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public boolean next() throws IOException {
+        if (this.position >= this.limit) {
+            return false;
+        }
+        long tag = this.readVarint();
+        this.field = (int) (tag >>> 3);
+        this.wireType = (int) (tag & 7);
+        return true;
+    }
+
+    public int getField() {
+        return this.field;
+    }
+
+    public int getWireType() {
+        return this.wireType;
+    }
+
+    public int getPosition() {
+        return this.position;
+    }
+
+    public void skipBytes(int count) throws IOException {
+        if (count < 0 || count > this.limit - this.position) {
+            throw new IOException("Skip exceeds message bounds");
+        }
+        this.position += count;
+    }
+
+    public boolean hasRemaining() {
+        return this.position < this.limit;
+    }
+
+    public long readVarint() throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (shift < 64) {
+            if (this.position >= this.limit) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = this.buffer[this.position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public int readInt() throws IOException {
+        return (int) this.readVarint();
+    }
+
+    public long readSigned() throws IOException {
+        long value = this.readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public int readLength() throws IOException {
+        long length = this.readVarint();
+        if (length < 0 || length > this.limit - this.position) {
+            throw new IOException("Length " + length + " exceeds message bounds");
+        }
+        return (int) length;
+    }
+
+    public ProtoReader readMessage() throws IOException {
+        int length = this.readLength();
+        ProtoReader reader = new ProtoReader(this.buffer, this.position, length);
+        this.position += length;
+        return reader;
+    }
+
+    public byte[] readBytes() throws IOException {
+        int length = this.readLength();
+        byte[] bytes = new byte[length];
+        System.arraycopy(this.buffer, this.position, bytes, 0, length);
+        this.position += length;
+        return bytes;
+    }
+
+    public String readString() throws IOException {
+        int length = this.readLength();
+        String value = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+        this.position += length;
+        return value;
+    }
+
+    public ProtoReader readPacked() throws IOException {
+        if (this.wireType == WIRE_LENGTH) {
+            return this.readMessage();
+        }
+        int start = this.position;
+        this.skip();
+        return new ProtoReader(this.buffer, start, this.position - start);
+    }
+
+    public void skip() throws IOException {
+        switch (this.wireType) {
+            case WIRE_VARINT:
+                this.readVarint();
+                break;
+            case WIRE_FIXED64:
+                this.position += 8;
+                break;
+            case WIRE_LENGTH:
+                int length = this.readLength();
+                this.position += length;
+                break;
+            case WIRE_FIXED32:
+                this.position += 4;
+                break;
+            default:
+                throw new IOException("Unsupported wire type " + this.wireType);
+        }
+        if (this.position > this.limit) {
+            throw new IOException("Field exceeds message bounds");
+        }
+    }
+}
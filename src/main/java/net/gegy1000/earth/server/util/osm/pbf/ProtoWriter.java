@@ -0,0 +1,72 @@
+package net.gegy1000.earth.server.util.osm.pbf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class ProtoWriter {
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+    public ProtoWriter writeVarint(int field, long value) {
+        this.writeTag(field, ProtoReader.WIRE_VARINT);
+        this.writeRawVarint(value);
+        return this;
+    }
+
+    public ProtoWriter writeSigned(int field, long value) {
+        return this.writeVarint(field, (value << 1) ^ (value >> 63));
+    }
+
+    public ProtoWriter writeBytes(int field, byte[] bytes) {
+        this.writeTag(field, ProtoReader.WIRE_LENGTH);
+        this.writeRawVarint(bytes.length);
+        this.buffer.write(bytes, 0, bytes.length);
+        return this;
+    }
+
+    public ProtoWriter writeString(int field, String value) {
+        return this.writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public ProtoWriter writeMessage(int field, ProtoWriter message) {
+        this.writeTag(field, ProtoReader.WIRE_LENGTH);
+        this.writeRawVarint(message.size());
+        byte[] bytes = message.toByteArray();
+        this.buffer.write(bytes, 0, bytes.length);
+        return this;
+    }
+
+    public ProtoWriter writeRawVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            this.buffer.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.buffer.write((int) value);
+        return this;
+    }
+
+    public ProtoWriter writeRawSigned(long value) {
+        return this.writeRawVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeTag(int field, int wireType) {
+        this.writeRawVarint((long) field << 3 | wireType);
+    }
+
+    public int size() {
+        return this.buffer.size();
+    }
+
+    public boolean isEmpty() {
+        return this.buffer.size() == 0;
+    }
+
+    public byte[] toByteArray() {
+        return this.buffer.toByteArray();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        this.buffer.writeTo(out);
+    }
+}
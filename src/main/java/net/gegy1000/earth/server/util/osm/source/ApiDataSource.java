@@ -0,0 +1,33 @@
+package net.gegy1000.earth.server.util.osm.source;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import net.gegy1000.earth.server.util.MapPoint;
+import net.gegy1000.earth.server.util.osm.MapTile;
+import net.gegy1000.earth.server.util.osm.xml.XmlIterator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+
+public class ApiDataSource extends HttpDataSource {
+    private final String url;
+
+    public ApiDataSource(HttpFetcher fetcher, String url) {
+        super(fetcher);
+        this.url = url.endsWith("/") ? url : url + "/";
+    }
+
+    @Override
+    public String getName() {
+        return MapDataSources.API;
+    }
+
+    @Override
+    public OsmIterator open(MapTile tile) throws IOException {
+        MapPoint start = tile.getMinPos();
+        MapPoint end = tile.getMaxPos();
+        String bounds = start.getLongitude() + "," + start.getLatitude() + "," + end.getLongitude() + "," + end.getLatitude();
+        byte[] data = this.get(new URL(this.url + "map?bbox=" + bounds));
+        return data != null ? new XmlIterator(new ByteArrayInputStream(data), false) : null;
+    }
+}
@@ -0,0 +1,20 @@
+package net.gegy1000.earth.server.util.osm.source;
+
+import java.io.IOException;
+import java.net.URL;
+
+public abstract class HttpDataSource implements MapDataSource {
+    protected final HttpFetcher fetcher;
+
+    protected HttpDataSource(HttpFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    protected byte[] get(URL url) throws IOException {
+        return this.fetcher.get(url);
+    }
+
+    public HttpFetcher getFetcher() {
+        return this.fetcher;
+    }
+}
@@ -0,0 +1,240 @@
+package net.gegy1000.earth.server.util.osm.source;
+
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.RateLimiter;
+import net.gegy1000.earth.Earth;
+import net.gegy1000.earth.server.config.EarthConfig;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+public class HttpFetcher {
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+    private static final String USER_AGENT = "Earth/" + Earth.VERSION;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxRetries;
+    private final Semaphore permits;
+    private final RateLimiter rateLimiter;
+
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder requestNanos = new LongAdder();
+    private final LongAccumulator maxRequestNanos = new LongAccumulator(Math::max, 0);
+
+    public HttpFetcher(int connectTimeout, int readTimeout, int maxConcurrent, double requestsPerSecond, int maxRetries) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxRetries = maxRetries;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.rateLimiter = RateLimiter.create(requestsPerSecond);
+    }
+
+    public static HttpFetcher fromConfig() {
+        return new HttpFetcher(EarthConfig.mapConnectTimeoutMillis, EarthConfig.mapReadTimeoutMillis, EarthConfig.mapMaxConcurrentRequests, EarthConfig.mapRequestsPerSecond, EarthConfig.mapMaxRetries);
+    }
+
+    public byte[] get(URL url) throws IOException {
+        String key = url.toString();
+        CompletableFuture<byte[]> created = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = this.inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            this.coalesced.increment();
+            return this.join(existing);
+        }
+        try {
+            byte[] data = this.fetch(url);
+            created.complete(data);
+            return data;
+        } catch (IOException | RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.inFlight.remove(key, created);
+        }
+    }
+
+    private byte[] join(CompletableFuture<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Coalesced request failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for coalesced request");
+        }
+    }
+
+    private byte[] fetch(URL url) throws IOException {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 0; ; attempt++) {
+            Response response;
+            try {
+                response = this.request(url);
+            } catch (IOException e) {
+                if (attempt >= this.maxRetries) {
+                    throw e;
+                }
+                Earth.LOGGER.warn("Request to {} failed ({}), retrying in {}ms", url, e.toString(), backoff);
+                backoff = this.backoff(backoff, -1);
+                continue;
+            }
+            if (response.code == HttpURLConnection.HTTP_OK) {
+                return response.body;
+            }
+            if (isRetryable(response.code) && attempt < this.maxRetries) {
+                long retryAfter = response.getRetryAfterMillis();
+                Earth.LOGGER.warn("{} returned response code {}, retrying in {}ms", url, response.code, retryAfter >= 0 ? retryAfter : backoff);
+                backoff = this.backoff(backoff, retryAfter);
+                continue;
+            }
+            Earth.LOGGER.error("{} returned response code {}!", url, response.code);
+            if (response.body.length > 0) {
+                Earth.LOGGER.error(new String(response.body, StandardCharsets.UTF_8));
+            }
+            return null;
+        }
+    }
+
+    private long backoff(long backoff, long retryAfter) throws IOException {
+        this.retries.increment();
+        long delay = retryAfter >= 0 ? retryAfter : backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+        return Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+    }
+
+    private Response request(URL url) throws IOException {
+        this.rateLimiter.acquire();
+        try {
+            this.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request slot");
+        }
+        long start = System.nanoTime();
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(this.connectTimeout);
+            connection.setReadTimeout(this.readTimeout);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            connection.setRequestProperty("User-Agent", USER_AGENT);
+            connection.setRequestMethod("GET");
+            int code = connection.getResponseCode();
+            InputStream stream = code < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() : connection.getErrorStream();
+            byte[] body = new byte[0];
+            long length = 0;
+            if (stream != null) {
+                CountingInputStream counter = new CountingInputStream(stream);
+                InputStream in = "gzip".equalsIgnoreCase(connection.getContentEncoding()) ? new GZIPInputStream(counter) : counter;
+                try {
+                    body = IOUtils.toByteArray(in);
+                } finally {
+                    in.close();
+                }
+                length = counter.getCount();
+            }
+            long time = System.nanoTime() - start;
+            this.record(time, length);
+            Earth.LOGGER.debug("{} returned {} in {}ms ({} bytes)", url, code, time / 1000000, length);
+            return new Response(code, body, connection.getHeaderField("Retry-After"));
+        } catch (IOException e) {
+            this.failures.increment();
+            this.record(System.nanoTime() - start, 0);
+            if (connection != null) {
+                connection.disconnect();
+            }
+            throw e;
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    private void record(long nanos, long length) {
+        this.requests.increment();
+        this.requestNanos.add(nanos);
+        this.maxRequestNanos.accumulate(nanos);
+        this.bytes.add(length);
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 429 || code >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    public long getRequests() {
+        return this.requests.sum();
+    }
+
+    public long getFailures() {
+        return this.failures.sum();
+    }
+
+    public long getRetries() {
+        return this.retries.sum();
+    }
+
+    public long getCoalesced() {
+        return this.coalesced.sum();
+    }
+
+    public long getBytes() {
+        return this.bytes.sum();
+    }
+
+    public long getRequestNanos() {
+        return this.requestNanos.sum();
+    }
+
+    public long getMaxRequestNanos() {
+        return this.maxRequestNanos.get();
+    }
+
+    private static class Response {
+        private final int code;
+        private final byte[] body;
+        private final String retryAfter;
+
+        Response(int code, byte[] body, String retryAfter) {
+            this.code = code;
+            this.body = body;
+            this.retryAfter = retryAfter;
+        }
+
+        long getRetryAfterMillis() {
+            if (this.retryAfter != null) {
+                try {
+                    return Math.min(Long.parseLong(this.retryAfter.trim()) * 1000, MAX_BACKOFF_MILLIS);
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package net.gegy1000.earth.server.util.osm.source;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import net.gegy1000.earth.server.util.osm.MapTile;
+import net.gegy1000.earth.server.util.osm.OsmTileFormat;
+import net.gegy1000.earth.server.util.osm.OsmTileIterator;
+import net.gegy1000.earth.server.util.osm.pbf.PbfIterator;
+import net.gegy1000.earth.server.util.osm.xml.XmlIterator;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+public class LocalDataSource implements MapDataSource {
+    private final File directory;
+
+    public LocalDataSource(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String getName() {
+        return MapDataSources.LOCAL;
+    }
+
+    @Override
+    public OsmIterator open(MapTile tile) throws IOException {
+        String name = tile.getTileLat() + "_" + tile.getTileLon();
+        File file = new File(this.directory, name + OsmTileFormat.EXTENSION);
+        if (file.exists()) {
+            return new OsmTileIterator(Files.readAllBytes(file.toPath()));
+        }
+        file = new File(this.directory, name + ".osm.pbf");
+        if (file.exists()) {
+            return new PbfIterator(new BufferedInputStream(new FileInputStream(file)), 1);
+        }
+        file = new File(this.directory, name + ".osm.gz");
+        if (file.exists()) {
+            InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+            return new XmlIterator(in, false);
+        }
+        file = new File(this.directory, name + ".osm");
+        if (file.exists()) {
+            return new XmlIterator(file, false);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,467 @@
+package net.gegy1000.earth.server.util.osm.source;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmEntity;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+import net.gegy1000.earth.server.util.osm.OsmTileIterator;
+import net.gegy1000.earth.server.util.osm.pbf.PbfIterator;
+import net.gegy1000.earth.server.util.osm.xml.XmlIterator;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class MapDataServer {
+    public static final String API_PATH = "/api/0.6/";
+    public static final String OVERPASS_PATH = "/api/interpreter";
+
+    private static final Pattern BBOX = Pattern.compile("\\[bbox:([^\\]]+)\\]");
+    private static final Pattern KEY = Pattern.compile("(?:way|relation)\\[\"([^\"]+)\"\\]");
+
+    private final Map<Long, OsmNode> nodes = new LinkedHashMap<>();
+    private final Map<Long, OsmWay> ways = new LinkedHashMap<>();
+    private final Map<Long, OsmRelation> relations = new LinkedHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private volatile int delayMillis;
+    private volatile double failureRate;
+    private volatile double throttleRate;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MapDataServer(OsmIterator iterator) {
+        for (EntityContainer container : iterator) {
+            OsmEntity entity = container.getEntity();
+            switch (container.getType()) {
+                case Node:
+                    this.nodes.put(entity.getId(), (OsmNode) entity);
+                    break;
+                case Way:
+                    this.ways.put(entity.getId(), (OsmWay) entity);
+                    break;
+                case Relation:
+                    this.relations.put(entity.getId(), (OsmRelation) entity);
+                    break;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: MapDataServer <extract> [port] [delayMillis] [failureRate] [throttleRate]");
+            System.out.println("Serves the extract through the OpenStreetMap API at " + API_PATH + " and an Overpass interpreter at " + OVERPASS_PATH);
+            return;
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8111;
+        MapDataServer server = new MapDataServer(open(new File(args[0])));
+        if (args.length > 2) {
+            server.setDelay(Integer.parseInt(args[2]));
+        }
+        if (args.length > 3) {
+            server.setFailureRate(Double.parseDouble(args[3]));
+        }
+        if (args.length > 4) {
+            server.setThrottleRate(Double.parseDouble(args[4]));
+        }
+        server.start(port);
+        System.out.printf("Serving %d nodes, %d ways and %d relations on port %d%n", server.nodes.size(), server.ways.size(), server.relations.size(), server.getPort());
+    }
+
+    public static OsmIterator open(File file) throws IOException {
+        String name = file.getName();
+        if (name.endsWith(".pbf")) {
+            return new PbfIterator(new BufferedInputStream(new FileInputStream(file)), 1);
+        } else if (name.endsWith(".osmt")) {
+            return new OsmTileIterator(Files.readAllBytes(file.toPath()));
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        if (name.endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        return new XmlIterator(in, false);
+    }
+
+    public void start(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.server.createContext(API_PATH, this::handleApi);
+        this.server.createContext(OVERPASS_PATH, this::handleOverpass);
+        this.executor = Executors.newFixedThreadPool(8, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Earth Map Server %d").build());
+        this.server.setExecutor(this.executor);
+        this.server.start();
+    }
+
+    public void stop() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.server = null;
+            this.executor.shutdownNow();
+            this.executor = null;
+        }
+    }
+
+    public void setDelay(int delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public void setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+    }
+
+    public long getRequestCount() {
+        return this.requests.get();
+    }
+
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    public String getApiUrl() {
+        return "http://127.0.0.1:" + this.getPort() + API_PATH;
+    }
+
+    public String getOverpassUrl() {
+        return "http://127.0.0.1:" + this.getPort() + OVERPASS_PATH;
+    }
+
+    private boolean injectFault(HttpExchange exchange) throws IOException {
+        this.requests.incrementAndGet();
+        if (this.delayMillis > 0) {
+            try {
+                Thread.sleep(this.delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < this.failureRate) {
+            this.respond(exchange, 503, null);
+            return true;
+        } else if (roll < this.failureRate + this.throttleRate) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            this.respond(exchange, 429, null);
+            return true;
+        }
+        return false;
+    }
+
+    private void handleApi(HttpExchange exchange) throws IOException {
+        if (this.injectFault(exchange)) {
+            return;
+        }
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        String path = exchange.getRequestURI().getPath().substring(API_PATH.length());
+        String bbox = parameters.get("bbox");
+        if (!path.equals("map") || bbox == null) {
+            this.respond(exchange, 404, null);
+            return;
+        }
+        double[] bounds = parseBounds(bbox.split(","));
+        if (bounds == null) {
+            this.respond(exchange, 400, null);
+            return;
+        }
+        this.respond(exchange, 200, this.selectApi(bounds[1], bounds[0], bounds[3], bounds[2]));
+    }
+
+    private void handleOverpass(HttpExchange exchange) throws IOException {
+        if (this.injectFault(exchange)) {
+            return;
+        }
+        String query = parseQuery(exchange.getRequestURI().getRawQuery()).get("data");
+        Matcher bbox = query != null ? BBOX.matcher(query) : null;
+        if (bbox == null || !bbox.find()) {
+            this.respond(exchange, 400, null);
+            return;
+        }
+        double[] bounds = parseBounds(bbox.group(1).split(","));
+        if (bounds == null) {
+            this.respond(exchange, 400, null);
+            return;
+        }
+        Set<String> keys = new HashSet<>();
+        Matcher key = KEY.matcher(query);
+        while (key.find()) {
+            keys.add(key.group(1));
+        }
+        this.respond(exchange, 200, this.selectOverpass(bounds[0], bounds[1], bounds[2], bounds[3], keys));
+    }
+
+    private Selection selectApi(double minLat, double minLon, double maxLat, double maxLon) {
+        Selection selection = new Selection();
+        for (OsmNode node : this.nodes.values()) {
+            if (contains(node, minLat, minLon, maxLat, maxLon)) {
+                selection.nodes.put(node.getId(), node);
+            }
+        }
+        Set<Long> inside = new HashSet<>(selection.nodes.keySet());
+        for (OsmWay way : this.ways.values()) {
+            if (this.references(way, inside)) {
+                selection.ways.put(way.getId(), way);
+                this.addNodes(selection, way);
+            }
+        }
+        for (OsmRelation relation : this.relations.values()) {
+            for (int i = 0; i < relation.getNumberOfMembers(); i++) {
+                OsmRelationMember member = relation.getMember(i);
+                if (member.getType() == EntityType.Node && selection.nodes.containsKey(member.getId()) || member.getType() == EntityType.Way && selection.ways.containsKey(member.getId())) {
+                    selection.relations.put(relation.getId(), relation);
+                    break;
+                }
+            }
+        }
+        return selection;
+    }
+
+    private Selection selectOverpass(double minLat, double minLon, double maxLat, double maxLon, Set<String> keys) {
+        Set<Long> inside = new HashSet<>();
+        for (OsmNode node : this.nodes.values()) {
+            if (contains(node, minLat, minLon, maxLat, maxLon)) {
+                inside.add(node.getId());
+            }
+        }
+        Set<Long> intersecting = new HashSet<>();
+        for (OsmWay way : this.ways.values()) {
+            if (this.references(way, inside)) {
+                intersecting.add(way.getId());
+            }
+        }
+        Selection selection = new Selection();
+        for (OsmRelation relation : this.relations.values()) {
+            if (hasKey(relation, keys) && this.intersects(relation, inside, intersecting)) {
+                selection.relations.put(relation.getId(), relation);
+                for (int i = 0; i < relation.getNumberOfMembers(); i++) {
+                    OsmRelationMember member = relation.getMember(i);
+                    if (member.getType() == EntityType.Way) {
+                        OsmWay way = this.ways.get(member.getId());
+                        if (way != null) {
+                            selection.ways.put(way.getId(), way);
+                        }
+                    } else if (member.getType() == EntityType.Node) {
+                        OsmNode node = this.nodes.get(member.getId());
+                        if (node != null) {
+                            selection.nodes.put(node.getId(), node);
+                        }
+                    }
+                }
+            }
+        }
+        for (long id : intersecting) {
+            OsmWay way = this.ways.get(id);
+            if (hasKey(way, keys)) {
+                selection.ways.put(id, way);
+            }
+        }
+        for (OsmWay way : selection.ways.values()) {
+            this.addNodes(selection, way);
+        }
+        return selection;
+    }
+
+    private boolean intersects(OsmRelation relation, Set<Long> nodes, Set<Long> ways) {
+        for (int i = 0; i < relation.getNumberOfMembers(); i++) {
+            OsmRelationMember member = relation.getMember(i);
+            if (member.getType() == EntityType.Node && nodes.contains(member.getId()) || member.getType() == EntityType.Way && ways.contains(member.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean references(OsmWay way, Set<Long> nodes) {
+        for (int i = 0; i < way.getNumberOfNodes(); i++) {
+            if (nodes.contains(way.getNodeId(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addNodes(Selection selection, OsmWay way) {
+        for (int i = 0; i < way.getNumberOfNodes(); i++) {
+            OsmNode node = this.nodes.get(way.getNodeId(i));
+            if (node != null) {
+                selection.nodes.put(node.getId(), node);
+            }
+        }
+    }
+
+    private void respond(HttpExchange exchange, int code, Selection selection) throws IOException {
+        if (selection == null) {
+            exchange.sendResponseHeaders(code, -1);
+            exchange.close();
+            return;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        boolean gzip = String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")).contains("gzip");
+        try (OutputStream out = gzip ? new GZIPOutputStream(buffer) : buffer) {
+            selection.write(out);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(code, buffer.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            buffer.writeTo(out);
+        }
+    }
+
+    private static boolean contains(OsmNode node, double minLat, double minLon, double maxLat, double maxLon) {
+        return node.getLatitude() >= minLat && node.getLatitude() <= maxLat && node.getLongitude() >= minLon && node.getLongitude() <= maxLon;
+    }
+
+    private static boolean hasKey(OsmEntity entity, Set<String> keys) {
+        for (int i = 0; i < entity.getNumberOfTags(); i++) {
+            if (keys.contains(entity.getTag(i).getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double[] parseBounds(String[] parts) {
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            double[] bounds = new double[4];
+            for (int i = 0; i < 4; i++) {
+                bounds[i] = Double.parseDouble(parts[i].trim());
+            }
+            return bounds;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int split = parameter.indexOf('=');
+                if (split > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, split), "UTF-8"), URLDecoder.decode(parameter.substring(split + 1), "UTF-8"));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static class Selection {
+        private final Map<Long, OsmNode> nodes = new TreeMap<>();
+        private final Map<Long, OsmWay> ways = new TreeMap<>();
+        private final Map<Long, OsmRelation> relations = new TreeMap<>();
+
+        void write(OutputStream output) throws IOException {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<osm version=\"0.6\" generator=\"earth\">\n");
+            for (OsmNode node : this.nodes.values()) {
+                writer.write("<node id=\"" + node.getId() + "\" lat=\"" + node.getLatitude() + "\" lon=\"" + node.getLongitude() + "\"");
+                this.writeTags(writer, "node", node);
+            }
+            for (OsmWay way : this.ways.values()) {
+                writer.write("<way id=\"" + way.getId() + "\">\n");
+                for (int i = 0; i < way.getNumberOfNodes(); i++) {
+                    writer.write("<nd ref=\"" + way.getNodeId(i) + "\"/>\n");
+                }
+                this.writeTags(writer, null, way);
+                writer.write("</way>\n");
+            }
+            for (OsmRelation relation : this.relations.values()) {
+                writer.write("<relation id=\"" + relation.getId() + "\">\n");
+                for (int i = 0; i < relation.getNumberOfMembers(); i++) {
+                    OsmRelationMember member = relation.getMember(i);
+                    String type = member.getType().name().toLowerCase();
+                    writer.write("<member type=\"" + type + "\" ref=\"" + member.getId() + "\" role=\"" + escape(member.getRole()) + "\"/>\n");
+                }
+                this.writeTags(writer, null, relation);
+                writer.write("</relation>\n");
+            }
+            writer.write("</osm>\n");
+            writer.flush();
+        }
+
+        private void writeTags(Writer writer, String element, OsmEntity entity) throws IOException {
+            if (element != null) {
+                if (entity.getNumberOfTags() == 0) {
+                    writer.write("/>\n");
+                    return;
+                }
+                writer.write(">\n");
+            }
+            for (int i = 0; i < entity.getNumberOfTags(); i++) {
+                OsmTag tag = entity.getTag(i);
+                writer.write("<tag k=\"" + escape(tag.getKey()) + "\" v=\"" + escape(tag.getValue()) + "\"/>\n");
+            }
+            if (element != null) {
+                writer.write("</" + element + ">\n");
+            }
+        }
+
+        private static String escape(String value) {
+            if (value == null) {
+                return "";
+            }
+            StringBuilder builder = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '&':
+                        builder.append("&amp;");
+                        break;
+                    case '<':
+                        builder.append("&lt;");
+                        break;
+                    case '>':
+                        builder.append("&gt;");
+                        break;
+                    case '"':
+                        builder.append("&quot;");
+                        break;
+                    default:
+                        builder.append(c);
+                        break;
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package net.gegy1000.earth.server.util.osm.source;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import net.gegy1000.earth.server.util.osm.MapTile;
+
+import java.io.IOException;
+
+public interface MapDataSource {
+    String getName();
+
+    OsmIterator open(MapTile tile) throws IOException;
+}
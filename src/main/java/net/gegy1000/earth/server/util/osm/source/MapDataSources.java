@@ -0,0 +1,55 @@
+package net.gegy1000.earth.server.util.osm.source;
+
+import net.gegy1000.earth.Earth;
+import net.gegy1000.earth.server.config.EarthConfig;
+import net.gegy1000.earth.server.world.gen.raster.object.ObjectRasterization;
+import net.minecraft.world.World;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+public class MapDataSources {
+    public static final String API = "api";
+    public static final String OVERPASS = "overpass";
+    public static final String LOCAL = "local";
+
+    private static final Map<String, Supplier<MapDataSource>> FACTORIES = new ConcurrentHashMap<>();
+    private static final Map<String, MapDataSource> SOURCES = new ConcurrentHashMap<>();
+
+    static {
+        register(API, () -> new ApiDataSource(HttpFetcher.fromConfig(), EarthConfig.mapApiUrl));
+        register(OVERPASS, () -> new OverpassDataSource(HttpFetcher.fromConfig(), EarthConfig.mapOverpassUrl, ObjectRasterization.getRenderedKeys()));
+        register(LOCAL, () -> new LocalDataSource(new File(".", EarthConfig.mapLocalDirectory)));
+    }
+
+    public static void register(String name, Supplier<MapDataSource> factory) {
+        FACTORIES.put(name, factory);
+        SOURCES.remove(name);
+    }
+
+    public static boolean isRegistered(String name) {
+        return FACTORIES.containsKey(name);
+    }
+
+    public static Set<String> getNames() {
+        return new TreeSet<>(FACTORIES.keySet());
+    }
+
+    public static MapDataSource get(String name) {
+        Supplier<MapDataSource> factory = FACTORIES.get(name);
+        if (factory == null) {
+            Earth.LOGGER.warn("Unknown OpenStreetMap data source {}, using {}", name, API);
+            name = API;
+            factory = FACTORIES.get(API);
+        }
+        return SOURCES.computeIfAbsent(name, key -> factory.get());
+    }
+
+    public static MapDataSource get(World world) {
+        return get(MapSourceData.get(world).getSource());
+    }
+}
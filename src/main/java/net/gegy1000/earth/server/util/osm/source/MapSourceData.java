@@ -0,0 +1,58 @@
+package net.gegy1000.earth.server.util.osm.source;
+
+import net.gegy1000.earth.Earth;
+import net.gegy1000.earth.server.config.EarthConfig;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldSavedData;
+import net.minecraft.world.storage.MapStorage;
+
+public class MapSourceData extends WorldSavedData {
+    private static final String NAME = Earth.MODID + "_map_source";
+
+    private String source = MapDataSources.API;
+
+    public MapSourceData() {
+        this(NAME);
+    }
+
+    public MapSourceData(String name) {
+        super(name);
+    }
+
+    public static MapSourceData get(World world) {
+        MapStorage storage = world.getPerWorldStorage();
+        MapSourceData data = (MapSourceData) storage.getOrLoadData(MapSourceData.class, NAME);
+        if (data == null) {
+            data = new MapSourceData();
+            data.source = EarthConfig.mapDataSource;
+            data.markDirty();
+            storage.setData(NAME, data);
+        }
+        return data;
+    }
+
+    public String getSource() {
+        return this.source;
+    }
+
+    public void setSource(String source) {
+        if (!source.equals(this.source)) {
+            this.source = source;
+            this.markDirty();
+        }
+    }
+
+    @Override
+    public void readFromNBT(NBTTagCompound compound) {
+        if (compound.hasKey("source")) {
+            this.source = compound.getString("source");
+        }
+    }
+
+    @Override
+    public NBTTagCompound writeToNBT(NBTTagCompound compound) {
+        compound.setString("source", this.source);
+        return compound;
+    }
+}
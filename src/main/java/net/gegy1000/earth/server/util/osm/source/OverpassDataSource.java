@@ -0,0 +1,50 @@
+package net.gegy1000.earth.server.util.osm.source;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import net.gegy1000.earth.server.util.MapPoint;
+import net.gegy1000.earth.server.util.osm.MapTile;
+import net.gegy1000.earth.server.util.osm.xml.XmlIterator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Collection;
+
+public class OverpassDataSource extends HttpDataSource {
+    private final String url;
+    private final Collection<String> keys;
+
+    public OverpassDataSource(HttpFetcher fetcher, String url, Collection<String> keys) {
+        super(fetcher);
+        this.url = url;
+        this.keys = keys;
+    }
+
+    @Override
+    public String getName() {
+        return MapDataSources.OVERPASS;
+    }
+
+    public String createQuery(MapTile tile) {
+        MapPoint start = tile.getMinPos();
+        MapPoint end = tile.getMaxPos();
+        StringBuilder query = new StringBuilder();
+        query.append("[out:xml][timeout:60][bbox:");
+        query.append(start.getLatitude()).append(',').append(start.getLongitude()).append(',');
+        query.append(end.getLatitude()).append(',').append(end.getLongitude()).append("];(");
+        for (String key : this.keys) {
+            query.append("way[\"").append(key).append("\"];");
+            query.append("relation[\"").append(key).append("\"];");
+        }
+        query.append(");(._;>;);out body;");
+        return query.toString();
+    }
+
+    @Override
+    public OsmIterator open(MapTile tile) throws IOException {
+        String query = URLEncoder.encode(this.createQuery(tile), "UTF-8");
+        byte[] data = this.get(new URL(this.url + "?data=" + query));
+        return data != null ? new XmlIterator(new ByteArrayInputStream(data), false) : null;
+    }
+}
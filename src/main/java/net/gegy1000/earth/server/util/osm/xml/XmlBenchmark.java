@@ -0,0 +1,62 @@
+package net.gegy1000.earth.server.util.osm.xml;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.xml.dynsax.OsmXmlIterator;
+import net.gegy1000.earth.server.util.osm.EntitySummary;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class XmlBenchmark {
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: XmlBenchmark <file.osm> [repeats]");
+            return;
+        }
+        byte[] xml = Files.readAllBytes(new File(args[0]).toPath());
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        System.out.printf("XML: %d bytes, %d parses per iteration%n", xml.length, repeats);
+
+        Map<String, IteratorFactory> readers = new LinkedHashMap<>();
+        readers.put("OsmXmlIterator (pull)", in -> new OsmXmlIterator(in, false, OsmXmlIterator.Mode.PULL));
+        for (int batchSize : new int[] { 128, 1024, 8192 }) {
+            readers.put("OsmXmlIterator (background, " + batchSize + " per batch)", in -> new OsmXmlIterator(in, false, OsmXmlIterator.Mode.BACKGROUND, batchSize, 4));
+        }
+        readers.put("XmlIterator", in -> new XmlIterator(in, false));
+
+        for (IteratorFactory reader : readers.values()) {
+            EntitySummary.of(reader.open(new ByteArrayInputStream(xml)));
+        }
+
+        EntitySummary expected = null;
+        for (Map.Entry<String, IteratorFactory> entry : readers.entrySet()) {
+            long best = Long.MAX_VALUE;
+            EntitySummary summary = null;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                for (int repeat = 0; repeat < repeats; repeat++) {
+                    summary = EntitySummary.of(entry.getValue().open(new ByteArrayInputStream(xml)));
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            double seconds = best / 1e9;
+            System.out.printf("%s: %.1fms, %.0f entities/sec, %.1f MB/s%n", entry.getKey(), best / 1e6 / repeats, summary.getCount() * repeats / seconds, xml.length * repeats / seconds / (1024 * 1024));
+            if (expected == null) {
+                expected = summary;
+            } else if (!expected.equals(summary)) {
+                throw new IOException(entry.getKey() + " produced different entities than " + readers.keySet().iterator().next());
+            }
+        }
+    }
+
+    private interface IteratorFactory {
+        OsmIterator open(InputStream input) throws IOException;
+    }
+}
@@ -0,0 +1,93 @@
+package net.gegy1000.earth.server.util.osm.xml;
+
+import de.topobyte.osm4j.core.access.OsmIterator;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class XmlIterator implements OsmIterator, Closeable {
+    private final XmlScanner scanner;
+    private EntityContainer next;
+    private boolean finished;
+
+    public XmlIterator(InputStream input, boolean parseMetadata) throws IOException {
+        this.scanner = new XmlScanner(input, parseMetadata);
+        this.advance();
+    }
+
+    public XmlIterator(File file, boolean parseMetadata) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file)), parseMetadata);
+    }
+
+    private void advance() throws IOException {
+        try {
+            this.next = this.scanner.next();
+        } catch (IOException | RuntimeException e) {
+            this.close();
+            throw e;
+        }
+        if (this.next == null) {
+            this.close();
+        }
+    }
+
+    @Override
+    public boolean hasBounds() {
+        return this.scanner.getBounds() != null;
+    }
+
+    @Override
+    public OsmBounds getBounds() {
+        return this.scanner.getBounds();
+    }
+
+    @Override
+    public Iterator<EntityContainer> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.next != null;
+    }
+
+    @Override
+    public EntityContainer next() {
+        EntityContainer next = this.next;
+        if (next == null) {
+            throw new NoSuchElementException("End of stream has been reached");
+        }
+        try {
+            this.advance();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("an iterator over osm files is read-only");
+    }
+
+    @Override
+    public void close() {
+        if (!this.finished) {
+            this.finished = true;
+            try {
+                this.scanner.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package net.gegy1000.earth.server.util.osm.xml;
+
+import de.topobyte.osm4j.core.access.OsmHandler;
+import de.topobyte.osm4j.core.access.OsmInputException;
+import de.topobyte.osm4j.core.access.OsmReader;
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class XmlReader implements OsmReader {
+    private final InputStream input;
+    private final boolean parseMetadata;
+    private OsmHandler handler;
+
+    public XmlReader(InputStream input, boolean parseMetadata) {
+        this.input = input;
+        this.parseMetadata = parseMetadata;
+    }
+
+    @Override
+    public void setHandler(OsmHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void read() throws OsmInputException {
+        try (XmlScanner scanner = new XmlScanner(this.input, this.parseMetadata)) {
+            OsmBounds bounds = null;
+            EntityContainer container;
+            while ((container = scanner.next()) != null) {
+                if (bounds == null && scanner.getBounds() != null) {
+                    bounds = scanner.getBounds();
+                    this.handler.handle(bounds);
+                }
+                switch (container.getType()) {
+                    case Node:
+                        this.handler.handle((OsmNode) container.getEntity());
+                        break;
+                    case Way:
+                        this.handler.handle((OsmWay) container.getEntity());
+                        break;
+                    case Relation:
+                        this.handler.handle((OsmRelation) container.getEntity());
+                        break;
+                }
+            }
+            if (bounds == null && scanner.getBounds() != null) {
+                this.handler.handle(scanner.getBounds());
+            }
+            this.handler.complete();
+        } catch (IOException | RuntimeException e) {
+            throw new OsmInputException("error while reading XML input", e);
+        }
+    }
+}
@@ -0,0 +1,779 @@
+package net.gegy1000.earth.server.util.osm.xml;
+
+import de.topobyte.osm4j.core.model.iface.EntityContainer;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmMetadata;
+import de.topobyte.osm4j.core.model.iface.OsmRelationMember;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.impl.Bounds;
+import de.topobyte.osm4j.core.model.impl.Entity;
+import de.topobyte.osm4j.core.model.impl.Metadata;
+import de.topobyte.osm4j.core.model.impl.Relation;
+import de.topobyte.osm4j.core.model.impl.RelationMember;
+import de.topobyte.osm4j.core.model.impl.Tag;
+import de.topobyte.osm4j.core.model.impl.Way;
+import gnu.trove.list.array.TLongArrayList;
+import net.gegy1000.earth.server.util.osm.FixedNode;
+import net.gegy1000.earth.server.util.osm.OsmTileFormat;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class XmlScanner implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FAST_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = new double[MAX_FAST_DIGITS + 1];
+
+    private static final int FIXED_DIGITS = 7;
+    private static final int[] FIXED_MULTIPLIERS = { 10000000, 1000000, 100000, 10000, 1000, 100, 10, 1 };
+
+    private static final byte[] ELEMENT_NODE = bytes("node");
+    private static final byte[] ELEMENT_WAY = bytes("way");
+    private static final byte[] ELEMENT_RELATION = bytes("relation");
+    private static final byte[] ELEMENT_TAG = bytes("tag");
+    private static final byte[] ELEMENT_ND = bytes("nd");
+    private static final byte[] ELEMENT_MEMBER = bytes("member");
+    private static final byte[] ELEMENT_BOUNDS = bytes("bounds");
+    private static final byte[] ELEMENT_BOUND = bytes("bound");
+
+    private static final byte[] ATTRIBUTE_ID = bytes("id");
+    private static final byte[] ATTRIBUTE_LAT = bytes("lat");
+    private static final byte[] ATTRIBUTE_LON = bytes("lon");
+    private static final byte[] ATTRIBUTE_K = bytes("k");
+    private static final byte[] ATTRIBUTE_V = bytes("v");
+    private static final byte[] ATTRIBUTE_REF = bytes("ref");
+    private static final byte[] ATTRIBUTE_TYPE = bytes("type");
+    private static final byte[] ATTRIBUTE_ROLE = bytes("role");
+    private static final byte[] ATTRIBUTE_MIN_LAT = bytes("minlat");
+    private static final byte[] ATTRIBUTE_MIN_LON = bytes("minlon");
+    private static final byte[] ATTRIBUTE_MAX_LAT = bytes("maxlat");
+    private static final byte[] ATTRIBUTE_MAX_LON = bytes("maxlon");
+    private static final byte[] ATTRIBUTE_BOX = bytes("box");
+    private static final byte[] ATTRIBUTE_VERSION = bytes("version");
+    private static final byte[] ATTRIBUTE_TIMESTAMP = bytes("timestamp");
+    private static final byte[] ATTRIBUTE_UID = bytes("uid");
+    private static final byte[] ATTRIBUTE_USER = bytes("user");
+    private static final byte[] ATTRIBUTE_CHANGESET = bytes("changeset");
+
+    private static final byte[] END_COMMENT = bytes("-->");
+    private static final byte[] END_CDATA = bytes("]]>");
+    private static final byte[] END_INSTRUCTION = bytes("?>");
+
+    static {
+        double power = 1.0;
+        for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = power;
+            power *= 10.0;
+        }
+    }
+
+    private final InputStream input;
+    private final boolean parseMetadata;
+    private final StringCache strings = new StringCache();
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private int nameStart;
+    private int nameEnd;
+    private int attributeEnd;
+    private boolean endTag;
+    private boolean selfClosing;
+
+    private int cursor;
+    private int keyStart;
+    private int keyEnd;
+    private int valueStart;
+    private int valueEnd;
+
+    private OsmBounds bounds;
+
+    private EntityType type;
+    private long id;
+    private int latitude;
+    private int longitude;
+    private OsmMetadata metadata;
+    private TLongArrayList nodes;
+    private List<OsmRelationMember> members;
+    private List<OsmTag> tags;
+
+    public XmlScanner(InputStream input, boolean parseMetadata) {
+        this.input = input;
+        this.parseMetadata = parseMetadata;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public OsmBounds getBounds() {
+        return this.bounds;
+    }
+
+    public EntityContainer next() throws IOException {
+        while (this.readTag()) {
+            if (this.endTag) {
+                if (this.type != null && this.isEntityEnd()) {
+                    return this.emit();
+                }
+                continue;
+            }
+            if (this.nameIs(ELEMENT_ND)) {
+                if (this.type == EntityType.Way) {
+                    this.readNd();
+                }
+            } else if (this.nameIs(ELEMENT_TAG)) {
+                if (this.type != null) {
+                    this.readTagElement();
+                }
+            } else if (this.nameIs(ELEMENT_NODE)) {
+                this.readEntity(EntityType.Node);
+                if (this.selfClosing) {
+                    return this.emit();
+                }
+            } else if (this.nameIs(ELEMENT_MEMBER)) {
+                if (this.type == EntityType.Relation) {
+                    this.readMember();
+                }
+            } else if (this.nameIs(ELEMENT_WAY)) {
+                this.readEntity(EntityType.Way);
+                if (this.selfClosing) {
+                    return this.emit();
+                }
+            } else if (this.nameIs(ELEMENT_RELATION)) {
+                this.readEntity(EntityType.Relation);
+                if (this.selfClosing) {
+                    return this.emit();
+                }
+            } else if (this.nameIs(ELEMENT_BOUNDS)) {
+                this.readBounds();
+            } else if (this.nameIs(ELEMENT_BOUND)) {
+                this.readBound();
+            }
+        }
+        if (this.type != null) {
+            throw new EOFException("Unexpected end of OSM XML inside " + this.type);
+        }
+        return null;
+    }
+
+    private boolean isEntityEnd() {
+        switch (this.type) {
+            case Node:
+                return this.nameIs(ELEMENT_NODE);
+            case Way:
+                return this.nameIs(ELEMENT_WAY);
+            default:
+                return this.nameIs(ELEMENT_RELATION);
+        }
+    }
+
+    private void readEntity(EntityType type) throws IOException {
+        this.type = type;
+        this.id = 0;
+        this.latitude = 0;
+        this.longitude = 0;
+        this.metadata = null;
+        this.tags = null;
+        if (type == EntityType.Way) {
+            this.nodes = new TLongArrayList();
+        } else if (type == EntityType.Relation) {
+            this.members = new ArrayList<>();
+        }
+        int version = -1;
+        long timestamp = -1;
+        long uid = -1;
+        String user = null;
+        long changeset = -1;
+        while (this.nextAttribute()) {
+            if (this.keyIs(ATTRIBUTE_ID)) {
+                this.id = this.parseLong();
+            } else if (this.keyIs(ATTRIBUTE_LAT)) {
+                this.latitude = this.parseFixed();
+            } else if (this.keyIs(ATTRIBUTE_LON)) {
+                this.longitude = this.parseFixed();
+            } else if (this.parseMetadata) {
+                if (this.keyIs(ATTRIBUTE_VERSION)) {
+                    version = (int) this.parseLong();
+                } else if (this.keyIs(ATTRIBUTE_TIMESTAMP)) {
+                    timestamp = this.parseTimestamp();
+                } else if (this.keyIs(ATTRIBUTE_UID)) {
+                    uid = this.parseLong();
+                } else if (this.keyIs(ATTRIBUTE_USER)) {
+                    user = this.parseString();
+                } else if (this.keyIs(ATTRIBUTE_CHANGESET)) {
+                    changeset = this.parseLong();
+                }
+            }
+        }
+        if (this.parseMetadata) {
+            this.metadata = new Metadata(version, timestamp, uid, user != null ? user : "", changeset);
+        }
+    }
+
+    private EntityContainer emit() {
+        Entity entity;
+        switch (this.type) {
+            case Node:
+                entity = new FixedNode(this.id, this.latitude, this.longitude, null, this.metadata);
+                break;
+            case Way:
+                entity = new Way(this.id, this.nodes, this.metadata);
+                break;
+            default:
+                entity = new Relation(this.id, this.members, this.metadata);
+                break;
+        }
+        if (this.tags != null) {
+            entity.setTags(this.tags);
+        }
+        EntityContainer container = new EntityContainer(this.type, entity);
+        this.type = null;
+        this.nodes = null;
+        this.members = null;
+        this.tags = null;
+        return container;
+    }
+
+    private void readNd() throws IOException {
+        while (this.nextAttribute()) {
+            if (this.keyIs(ATTRIBUTE_REF)) {
+                this.nodes.add(this.parseLong());
+            }
+        }
+    }
+
+    private void readTagElement() throws IOException {
+        String key = null;
+        String value = null;
+        while (this.nextAttribute()) {
+            if (this.keyIs(ATTRIBUTE_K)) {
+                key = this.parseString();
+            } else if (this.keyIs(ATTRIBUTE_V)) {
+                value = this.parseString();
+            }
+        }
+        if (this.tags == null) {
+            this.tags = new ArrayList<>(4);
+        }
+        this.tags.add(new Tag(key, value));
+    }
+
+    private void readMember() throws IOException {
+        EntityType memberType = null;
+        long ref = 0;
+        String role = null;
+        while (this.nextAttribute()) {
+            if (this.keyIs(ATTRIBUTE_TYPE)) {
+                memberType = this.parseMemberType();
+            } else if (this.keyIs(ATTRIBUTE_REF)) {
+                ref = this.parseLong();
+            } else if (this.keyIs(ATTRIBUTE_ROLE)) {
+                role = this.parseString();
+            }
+        }
+        if (memberType != null) {
+            this.members.add(new RelationMember(ref, memberType, role));
+        }
+    }
+
+    private void readBounds() throws IOException {
+        double minLat = 0.0;
+        double minLon = 0.0;
+        double maxLat = 0.0;
+        double maxLon = 0.0;
+        while (this.nextAttribute()) {
+            if (this.keyIs(ATTRIBUTE_MIN_LAT)) {
+                minLat = this.parseDouble();
+            } else if (this.keyIs(ATTRIBUTE_MIN_LON)) {
+                minLon = this.parseDouble();
+            } else if (this.keyIs(ATTRIBUTE_MAX_LAT)) {
+                maxLat = this.parseDouble();
+            } else if (this.keyIs(ATTRIBUTE_MAX_LON)) {
+                maxLon = this.parseDouble();
+            }
+        }
+        if (this.bounds == null) {
+            this.bounds = new Bounds(minLon, maxLon, maxLat, minLat);
+        }
+    }
+
+    private void readBound() throws IOException {
+        while (this.nextAttribute()) {
+            if (this.keyIs(ATTRIBUTE_BOX)) {
+                String[] parts = this.parseString().split(",");
+                if (parts.length == 4 && this.bounds == null) {
+                    double minLat = Double.parseDouble(parts[0]);
+                    double minLon = Double.parseDouble(parts[1]);
+                    double maxLat = Double.parseDouble(parts[2]);
+                    double maxLon = Double.parseDouble(parts[3]);
+                    this.bounds = new Bounds(minLon, maxLon, maxLat, minLat);
+                }
+            }
+        }
+    }
+
+    private boolean readTag() throws IOException {
+        while (true) {
+            int start = this.indexOf((byte) '<', this.position);
+            if (start < 0) {
+                this.position = this.limit;
+                if (!this.fill()) {
+                    return false;
+                }
+                continue;
+            }
+            this.position = start;
+            if (!this.require(2)) {
+                throw new EOFException("Unexpected end of OSM XML");
+            }
+            byte marker = this.buffer[this.position + 1];
+            if (marker == '?') {
+                this.skipPast(END_INSTRUCTION);
+            } else if (marker == '!') {
+                if (this.require(4) && this.buffer[this.position + 2] == '-' && this.buffer[this.position + 3] == '-') {
+                    this.skipPast(END_COMMENT);
+                } else if (this.require(3) && this.buffer[this.position + 2] == '[') {
+                    this.skipPast(END_CDATA);
+                } else {
+                    this.position = this.findTagEnd() + 1;
+                }
+            } else {
+                break;
+            }
+        }
+        int end = this.findTagEnd();
+        int index = this.position + 1;
+        this.endTag = this.buffer[index] == '/';
+        if (this.endTag) {
+            index++;
+        }
+        this.nameStart = index;
+        while (index < end && !isNameEnd(this.buffer[index])) {
+            index++;
+        }
+        this.nameEnd = index;
+        this.selfClosing = !this.endTag && this.buffer[end - 1] == '/';
+        this.attributeEnd = this.selfClosing ? end - 1 : end;
+        this.cursor = index;
+        this.position = end + 1;
+        return true;
+    }
+
+    private int findTagEnd() throws IOException {
+        int scan = this.position + 1;
+        byte quote = 0;
+        while (true) {
+            byte[] buffer = this.buffer;
+            int limit = this.limit;
+            for (; scan < limit; scan++) {
+                byte b = buffer[scan];
+                if (quote != 0) {
+                    if (b == quote) {
+                        quote = 0;
+                    }
+                } else if (b == '>') {
+                    return scan;
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                }
+            }
+            int offset = this.position;
+            if (!this.fill()) {
+                throw new EOFException("Unexpected end of OSM XML inside a tag");
+            }
+            scan -= offset;
+        }
+    }
+
+    private void skipPast(byte[] terminator) throws IOException {
+        int scan = this.position + 2;
+        while (true) {
+            for (; scan + terminator.length <= this.limit; scan++) {
+                if (this.regionEquals(scan, terminator)) {
+                    this.position = scan + terminator.length;
+                    return;
+                }
+            }
+            int offset = this.position;
+            if (!this.fill()) {
+                throw new EOFException("Unexpected end of OSM XML");
+            }
+            scan -= offset;
+        }
+    }
+
+    private boolean regionEquals(int offset, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (this.buffer[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(byte value, int from) {
+        byte[] buffer = this.buffer;
+        for (int i = from; i < this.limit; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean require(int count) throws IOException {
+        while (this.limit - this.position < count) {
+            if (!this.fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        if (this.position > 0) {
+            System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+            this.limit -= this.position;
+            this.position = 0;
+        }
+        if (this.limit == this.buffer.length) {
+            byte[] grown = new byte[this.buffer.length * 2];
+            System.arraycopy(this.buffer, 0, grown, 0, this.limit);
+            this.buffer = grown;
+        }
+        int read = this.input.read(this.buffer, this.limit, this.buffer.length - this.limit);
+        if (read <= 0) {
+            return false;
+        }
+        this.limit += read;
+        return true;
+    }
+
+    private boolean nextAttribute() throws IOException {
+        byte[] buffer = this.buffer;
+        int index = this.cursor;
+        int end = this.attributeEnd;
+        while (index < end && isWhitespace(buffer[index])) {
+            index++;
+        }
+        if (index >= end) {
+            return false;
+        }
+        this.keyStart = index;
+        while (index < end && buffer[index] != '=' && !isWhitespace(buffer[index])) {
+            index++;
+        }
+        this.keyEnd = index;
+        while (index < end && isWhitespace(buffer[index])) {
+            index++;
+        }
+        if (index >= end || buffer[index] != '=') {
+            throw new IOException("Malformed OSM XML attribute");
+        }
+        index++;
+        while (index < end && isWhitespace(buffer[index])) {
+            index++;
+        }
+        if (index >= end || buffer[index] != '"' && buffer[index] != '\'') {
+            throw new IOException("Malformed OSM XML attribute value");
+        }
+        byte quote = buffer[index++];
+        this.valueStart = index;
+        while (index < end && buffer[index] != quote) {
+            index++;
+        }
+        if (index >= end) {
+            throw new IOException("Unterminated OSM XML attribute value");
+        }
+        this.valueEnd = index;
+        this.cursor = index + 1;
+        return true;
+    }
+
+    private boolean nameIs(byte[] name) {
+        return this.regionIs(this.nameStart, this.nameEnd, name);
+    }
+
+    private boolean keyIs(byte[] key) {
+        return this.regionIs(this.keyStart, this.keyEnd, key);
+    }
+
+    private boolean regionIs(int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        return this.regionEquals(start, expected);
+    }
+
+    private long parseLong() {
+        byte[] buffer = this.buffer;
+        int index = this.valueStart;
+        int end = this.valueEnd;
+        boolean negative = index < end && buffer[index] == '-';
+        if (negative) {
+            index++;
+        }
+        if (index >= end || end - index > 18) {
+            return Long.parseLong(this.rawString());
+        }
+        long value = 0;
+        for (; index < end; index++) {
+            int digit = buffer[index] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(this.rawString());
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private double parseDouble() {
+        byte[] buffer = this.buffer;
+        int index = this.valueStart;
+        int end = this.valueEnd;
+        boolean negative = index < end && buffer[index] == '-';
+        if (negative) {
+            index++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        for (; index < end; index++) {
+            byte b = buffer[index];
+            if (b >= '0' && b <= '9') {
+                if (++digits > MAX_FAST_DIGITS) {
+                    return Double.parseDouble(this.rawString());
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (point) {
+                    scale++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                return Double.parseDouble(this.rawString());
+            }
+        }
+        if (digits == 0) {
+            return Double.parseDouble(this.rawString());
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private int parseFixed() {
+        byte[] buffer = this.buffer;
+        int index = this.valueStart;
+        int end = this.valueEnd;
+        boolean negative = index < end && buffer[index] == '-';
+        if (negative) {
+            index++;
+        }
+        long value = 0;
+        int digits = 0;
+        int scale = -1;
+        boolean roundUp = false;
+        for (; index < end; index++) {
+            byte b = buffer[index];
+            if (b >= '0' && b <= '9') {
+                if (scale < FIXED_DIGITS) {
+                    if (++digits > MAX_FAST_DIGITS) {
+                        return this.parseFixedFallback();
+                    }
+                    value = value * 10 + (b - '0');
+                    if (scale >= 0) {
+                        scale++;
+                    }
+                } else if (scale == FIXED_DIGITS) {
+                    roundUp = b >= '5';
+                    scale++;
+                }
+            } else if (b == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return this.parseFixedFallback();
+            }
+        }
+        if (digits == 0) {
+            return this.parseFixedFallback();
+        }
+        value = value * FIXED_MULTIPLIERS[Math.max(Math.min(scale, FIXED_DIGITS), 0)];
+        if (roundUp) {
+            value++;
+        }
+        if (value > Integer.MAX_VALUE) {
+            return this.parseFixedFallback();
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    private int parseFixedFallback() {
+        long value = OsmTileFormat.toFixed(Double.parseDouble(this.rawString()));
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    private EntityType parseMemberType() {
+        if (this.regionIs(this.valueStart, this.valueEnd, ELEMENT_NODE)) {
+            return EntityType.Node;
+        } else if (this.regionIs(this.valueStart, this.valueEnd, ELEMENT_WAY)) {
+            return EntityType.Way;
+        } else if (this.regionIs(this.valueStart, this.valueEnd, ELEMENT_RELATION)) {
+            return EntityType.Relation;
+        }
+        return null;
+    }
+
+    private long parseTimestamp() {
+        try {
+            return Instant.parse(this.rawString()).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private String rawString() {
+        return new String(this.buffer, this.valueStart, this.valueEnd - this.valueStart, StandardCharsets.UTF_8);
+    }
+
+    private String parseString() {
+        int start = this.valueStart;
+        int end = this.valueEnd;
+        for (int i = start; i < end; i++) {
+            if (this.buffer[i] == '&') {
+                return this.unescape(start, end);
+            }
+        }
+        return this.strings.get(this.buffer, start, end);
+    }
+
+    private String unescape(int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+        int segment = start;
+        int index = start;
+        while (index < end) {
+            if (this.buffer[index] != '&') {
+                index++;
+                continue;
+            }
+            int semicolon = index + 1;
+            while (semicolon < end && this.buffer[semicolon] != ';') {
+                semicolon++;
+            }
+            if (semicolon >= end) {
+                break;
+            }
+            builder.append(new String(this.buffer, segment, index - segment, StandardCharsets.UTF_8));
+            String entity = new String(this.buffer, index + 1, semicolon - index - 1, StandardCharsets.US_ASCII);
+            switch (entity) {
+                case "amp":
+                    builder.append('&');
+                    break;
+                case "lt":
+                    builder.append('<');
+                    break;
+                case "gt":
+                    builder.append('>');
+                    break;
+                case "quot":
+                    builder.append('"');
+                    break;
+                case "apos":
+                    builder.append('\'');
+                    break;
+                default:
+                    int codePoint = parseCodePoint(entity);
+                    if (codePoint >= 0) {
+                        builder.appendCodePoint(codePoint);
+                    } else {
+                        builder.append('&').append(entity).append(';');
+                    }
+                    break;
+            }
+            index = semicolon + 1;
+            segment = index;
+        }
+        builder.append(new String(this.buffer, segment, end - segment, StandardCharsets.UTF_8));
+        return builder.toString();
+    }
+
+    private static int parseCodePoint(String entity) {
+        if (!entity.startsWith("#")) {
+            return -1;
+        }
+        boolean hex = entity.startsWith("#x") || entity.startsWith("#X");
+        String digits = entity.substring(hex ? 2 : 1);
+        if (digits.isEmpty() || digits.charAt(0) == '+' || digits.charAt(0) == '-') {
+            return -1;
+        }
+        try {
+            int codePoint = Integer.parseInt(digits, hex ? 16 : 10);
+            return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return isWhitespace(b) || b == '/' || b == '>';
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.input.close();
+    }
+
+    private static class StringCache {
+        private static final int SIZE = 4096;
+        private static final int MAX_LENGTH = 32;
+
+        private final byte[][] keys = new byte[SIZE][];
+        private final String[] values = new String[SIZE];
+
+        String get(byte[] buffer, int start, int end) {
+            int length = end - start;
+            if (length > MAX_LENGTH) {
+                return new String(buffer, start, length, StandardCharsets.UTF_8);
+            }
+            int hash = 0x811C9DC5;
+            for (int i = start; i < end; i++) {
+                hash = (hash ^ buffer[i]) * 0x01000193;
+            }
+            int slot = (hash ^ hash >>> 16) & SIZE - 1;
+            byte[] key = this.keys[slot];
+            if (key != null && key.length == length && matches(key, buffer, start)) {
+                return this.values[slot];
+            }
+            String value = new String(buffer, start, length, StandardCharsets.UTF_8);
+            byte[] copy = new byte[length];
+            System.arraycopy(buffer, start, copy, 0, length);
+            this.keys[slot] = copy;
+            this.values[slot] = value;
+            return value;
+        }
+
+        private static boolean matches(byte[] key, byte[] buffer, int start) {
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
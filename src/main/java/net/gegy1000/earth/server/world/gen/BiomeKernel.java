@@ -0,0 +1,230 @@
+package net.gegy1000.earth.server.world.gen;
+
+import net.minecraft.world.biome.Biome;
+
+public class BiomeKernel {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private int[] originX = new int[16];
+    private int[] originY = new int[16];
+    private double[] intermediateX = new double[16];
+    private double[] intermediateY = new double[16];
+    private boolean[] validX = new boolean[16];
+    private boolean[] validY = new boolean[16];
+
+    private int[] windowHeights = new int[64];
+    private Biome[] windowBiomes = new Biome[64];
+    private int windowWidth;
+    private int minX;
+    private int minY;
+
+    private final int[] heightKeys = new int[16];
+    private final double[] columns = new double[4];
+
+    public void fill(EarthGenerator generator, Biome[] biomes, int x, int z, int width, int length) {
+        int dataWidth = generator.biomemap.getWidth();
+        int dataHeight = generator.biomemap.getHeight();
+
+        double worldScale = generator.getWorldScale();
+
+        int scaledWidth = (int) (dataWidth * worldScale);
+        int scaledHeight = (int) (dataHeight * worldScale);
+
+        this.ensureCapacity(width, length);
+
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        for (int partX = 0; partX < width; partX++) {
+            int blockX = (int) (x + partX + EarthGenerator.WORLD_OFFSET_X * worldScale);
+            this.validX[partX] = blockX >= 0 && blockX < scaledWidth;
+            double xScaled = (double) blockX / (scaledWidth - 1) * (dataWidth - 1);
+            int origin = (int) xScaled;
+            this.originX[partX] = origin;
+            this.intermediateX[partX] = xScaled - origin;
+            if (this.validX[partX]) {
+                minX = Math.min(minX, origin - 1);
+                maxX = Math.max(maxX, origin + 2);
+            }
+        }
+
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int partZ = 0; partZ < length; partZ++) {
+            int blockZ = (int) (z + partZ + EarthGenerator.WORLD_OFFSET_Z * worldScale);
+            this.validY[partZ] = blockZ >= 0 && blockZ < scaledHeight;
+            double yScaled = (double) blockZ / (scaledHeight - 1) * (dataHeight - 1);
+            int origin = (int) yScaled;
+            this.originY[partZ] = origin;
+            this.intermediateY[partZ] = yScaled - origin;
+            if (this.validY[partZ]) {
+                minY = Math.min(minY, origin - 1);
+                maxY = Math.max(maxY, origin + 2);
+            }
+        }
+
+        if (minX > maxX || minY > maxY) {
+            for (int i = 0; i < width * length; i++) {
+                biomes[i] = EarthGenerator.DEFAULT_BIOME;
+            }
+            return;
+        }
+
+        this.loadWindow(generator, minX, minY, maxX - minX + 1, maxY - minY + 1);
+
+        int i = 0;
+        for (int partZ = 0; partZ < length; partZ++) {
+            for (int partX = 0; partX < width; partX++) {
+                if (this.validX[partX] && this.validY[partZ]) {
+                    biomes[i] = this.select(this.originX[partX], this.originY[partZ], this.intermediateX[partX], this.intermediateY[partZ]);
+                } else {
+                    biomes[i] = EarthGenerator.DEFAULT_BIOME;
+                }
+                i++;
+            }
+        }
+    }
+
+    private void loadWindow(EarthGenerator generator, int minX, int minY, int width, int height) {
+        int size = width * height;
+        if (this.windowHeights.length < size) {
+            this.windowHeights = new int[size];
+            this.windowBiomes = new Biome[size];
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.windowWidth = width;
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                this.windowHeights[i] = (int) generator.getHeight(minX + x, minY + y);
+                this.windowBiomes[i] = generator.getBiome(minX + x, minY + y);
+                i++;
+            }
+        }
+    }
+
+    private Biome select(int xOrigin, int yOrigin, double xIntermediate, double yIntermediate) {
+        int windowWidth = this.windowWidth;
+        int base = (xOrigin - 1 - this.minX) + (yOrigin - 1 - this.minY) * windowWidth;
+        int[] heights = this.windowHeights;
+        Biome[] biomes = this.windowBiomes;
+
+        Biome first = biomes[base];
+        boolean hasMultipleBiomes = false;
+        int keyCount = 0;
+        for (int u = 0; u < 4 && !hasMultipleBiomes; u++) {
+            for (int v = 0; v < 4; v++) {
+                if (biomes[base + u + v * windowWidth] != first) {
+                    hasMultipleBiomes = true;
+                    break;
+                }
+            }
+        }
+        if (!hasMultipleBiomes) {
+            return first;
+        }
+
+        for (int u = 0; u < 4; u++) {
+            for (int v = 0; v < 4; v++) {
+                int height = heights[base + u + v * windowWidth];
+                boolean present = false;
+                for (int k = 0; k < keyCount; k++) {
+                    if (this.heightKeys[k] == height) {
+                        present = true;
+                        break;
+                    }
+                }
+                if (!present) {
+                    this.heightKeys[keyCount++] = height;
+                }
+            }
+            int index = base + u;
+            this.columns[u] = EarthGenerator.cubic(heights[index], heights[index + windowWidth], heights[index + windowWidth * 2], heights[index + windowWidth * 3], yIntermediate);
+        }
+        double interpolated = EarthGenerator.cubic(this.columns[0], this.columns[1], this.columns[2], this.columns[3], xIntermediate);
+
+        int closestHeight = this.findClosestHeight(keyCount, interpolated);
+
+        Biome closestBiome = null;
+        boolean ambiguous = false;
+        for (int u = 0; u < 4 && !ambiguous; u++) {
+            for (int v = 0; v < 4; v++) {
+                int index = base + u + v * windowWidth;
+                if (heights[index] == closestHeight) {
+                    if (closestBiome == null) {
+                        closestBiome = biomes[index];
+                    } else if (biomes[index] != closestBiome) {
+                        ambiguous = true;
+                        break;
+                    }
+                }
+            }
+        }
+        if (!ambiguous) {
+            return closestBiome;
+        }
+
+        if (xIntermediate * xIntermediate + yIntermediate * yIntermediate + nextDouble(xOrigin * yOrigin) * 0.02d > 0.25) {
+            double phi = Math.atan2(yIntermediate, xIntermediate);
+            int dirPhi = (int) (Math.floor((phi + Math.PI) / (2 * Math.PI) * 8.d + 0.5) % 8.0d);
+            if (dirPhi == 8) {
+                dirPhi = 7;
+            }
+            if (dirPhi == 0 || dirPhi == 1 || dirPhi == 7) {
+                xOrigin -= 1;
+            } else if (dirPhi == 3 || dirPhi == 4 || dirPhi == 5) {
+                xOrigin += 1;
+            }
+            if (dirPhi == 1 || dirPhi == 2 || dirPhi == 3) {
+                yOrigin -= 1;
+            } else if (dirPhi == 5 || dirPhi == 6 || dirPhi == 7) {
+                yOrigin += 1;
+            }
+        }
+        return biomes[(xOrigin - this.minX) + (yOrigin - this.minY) * windowWidth];
+    }
+
+    private int findClosestHeight(int keyCount, double interpolated) {
+        // Visit heights in the iteration order of the HashMultimap used by getGenerationBiome so that ties resolve identically
+        int tableMask = keyCount > 12 ? 31 : 15;
+        double closestDistance = Double.POSITIVE_INFINITY;
+        int closestHeight = 0;
+        for (int bucket = 0; bucket <= tableMask; bucket++) {
+            for (int k = 0; k < keyCount; k++) {
+                int height = this.heightKeys[k];
+                if (((height ^ (height >>> 16)) & tableMask) == bucket) {
+                    double diff = Math.abs(height - interpolated);
+                    if (diff < closestDistance) {
+                        closestHeight = height;
+                        closestDistance = diff;
+                    }
+                }
+            }
+        }
+        return closestHeight;
+    }
+
+    private static double nextDouble(long seed) {
+        long state = (seed ^ MULTIPLIER) & MASK;
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        int high = (int) (state >>> (48 - 26));
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        int low = (int) (state >>> (48 - 27));
+        return (((long) high << 27) + low) * 0x1.0p-53;
+    }
+
+    private void ensureCapacity(int width, int length) {
+        if (this.originX.length < width) {
+            this.originX = new int[width];
+            this.intermediateX = new double[width];
+            this.validX = new boolean[width];
+        }
+        if (this.originY.length < length) {
+            this.originY = new int[length];
+            this.intermediateY = new double[length];
+            this.validY = new boolean[length];
+        }
+    }
+}
@@ -56,13 +56,7 @@ public class BiomeProviderEarth extends BiomeProvider {
         if (biomes == null || biomes.length < width * height) {
             biomes = new Biome[width * height];
         }
-        int i = 0;
-        for (int partZ = 0; partZ < height; partZ++) {
-            for (int partX = 0; partX < width; partX++) {
-                biomes[i] = this.getBiomeAt(partX + x, partZ + z);
-                i++;
-            }
-        }
+        this.GENERATOR.fillBiomes(biomes, x, z, width, height);
         return biomes;
     }
 
@@ -82,13 +76,7 @@ public class BiomeProviderEarth extends BiomeProvider {
             System.arraycopy(cachedBiomes, 0, biomes, 0, width * length);
             return biomes;
         } else {
-            int i = 0;
-            for (int partZ = 0; partZ < length; ++partZ) {
-                for (int partX = 0; partX < width; ++partX) {
-                    biomes[i] = this.getBiomeAt(partX + x, partZ + z);
-                    i++;
-                }
-            }
+            this.GENERATOR.fillBiomes(biomes, x, z, width, length);
             return biomes;
         }
     }
@@ -102,9 +90,10 @@ public class BiomeProviderEarth extends BiomeProvider {
         int maxZ = z + radius >> 2;
         int width = maxX - minX + 1;
         int length = maxZ - minZ + 1;
+        int level = this.GENERATOR.getCoarseLevel(radius);
         for (int partZ = 0; partZ < length; ++partZ) {
             for (int partX = 0; partX < width; ++partX) {
-                Biome biome = this.getBiomeAt(partX + x, partZ + z);
+                Biome biome = this.GENERATOR.getCoarseBiome(level, minX + partX << 2, minZ + partZ << 2);
                 if (!allowed.contains(biome)) {
                     return false;
                 }
@@ -125,11 +114,12 @@ public class BiomeProviderEarth extends BiomeProvider {
         BlockPos pos = null;
         int j2 = 0;
         int i = 0;
+        int level = this.GENERATOR.getCoarseLevel(radius);
         for (int partZ = 0; partZ < length; ++partZ) {
             for (int partX = 0; partX < width; ++partX) {
                 int chunkX = minX + i % width << 2;
                 int chunkZ = minZ + i / width << 2;
-                Biome biome = this.getBiomeAt(partX + x, partZ + z);
+                Biome biome = this.GENERATOR.getCoarseBiome(level, chunkX, chunkZ);
                 if (biomes.contains(biome) && (pos == null || random.nextInt(j2 + 1) == 0)) {
                     pos = new BlockPos(chunkX, 0, chunkZ);
                     ++j2;
@@ -140,10 +130,6 @@ public class BiomeProviderEarth extends BiomeProvider {
         return pos;
     }
 
-    private Biome getBiomeAt(int x, int z) {
-        return this.GENERATOR.getGenerationBiome(x, z);
-    }
-
     @Override
     public void cleanupCache() {
         this.biomeCache.cleanupCache();
@@ -1,6 +1,9 @@
 package net.gegy1000.earth.server.world.gen;
 
+import net.gegy1000.earth.Earth;
+import net.gegy1000.earth.server.config.EarthConfig;
 import net.gegy1000.earth.server.util.osm.MapHandler;
+import net.gegy1000.earth.server.util.osm.MapLoadPolicy;
 import net.gegy1000.earth.server.util.osm.MapTile;
 import net.minecraft.block.BlockFalling;
 import net.minecraft.block.state.IBlockState;
@@ -51,12 +54,11 @@ public class ChunkGeneratorEarth implements IChunkGenerator {
 
     public void setBlocksInChunk(int chunkX, int chunkZ, ChunkPrimer chunkPrimer) {
         this.biomesForGeneration = this.world.getBiomeProvider().getBiomesForGeneration(this.biomesForGeneration, chunkX * 4 - 2, chunkZ * 4 - 2, 10, 10);
-        int chunkWorldX = chunkX << 4;
-        int chunkWorldZ = chunkZ << 4;
         IBlockState bedrock = Blocks.BEDROCK.getDefaultState();
+        int[] heights = this.earthGenerator.getColumnHeights().get(chunkX, chunkZ);
         for (int x = 0; x < 16; x++) {
             for (int z = 0; z < 16; z++) {
-                int height = (this.earthGenerator.getGenerationHeight(x + chunkWorldX, z + chunkWorldZ));
+                int height = heights[x + z * 16];
                 chunkPrimer.setBlockState(x, 0, z, bedrock);
                 for (int y = 1; y <= height; y++) {
                     chunkPrimer.setBlockState(x, y, z, STONE_BLOCK);
@@ -69,19 +71,19 @@ public class ChunkGeneratorEarth implements IChunkGenerator {
             }
         }
         if (this.structures) {
-            ChunkPos pos = new ChunkPos(chunkX, chunkZ);
-            this.generateTile(pos, chunkPrimer, chunkWorldX, chunkWorldZ);
-            this.generateTile(pos, chunkPrimer, chunkWorldX + 16, chunkWorldZ);
-            this.generateTile(pos, chunkPrimer, chunkWorldX, chunkWorldZ + 16);
-            this.generateTile(pos, chunkPrimer, chunkWorldX + 16, chunkWorldZ + 16);
+            long timeout = EarthConfig.mapLoadPolicy == MapLoadPolicy.WAIT ? EarthConfig.mapWaitMillis : 0;
+            MapTile[] tiles = MapHandler.getChunkTiles(this.world, chunkX, chunkZ, timeout);
+            if (tiles != null) {
+                ChunkPos pos = new ChunkPos(chunkX, chunkZ);
+                for (MapTile tile : tiles) {
+                    tile.generate(pos, chunkPrimer);
+                }
+            } else {
+                StructureRetrofitter.markPending(this.world, chunkX, chunkZ);
+            }
         }
     }
 
-    private void generateTile(ChunkPos pos, ChunkPrimer primer, int x, int z) {
-        MapTile tile = MapHandler.getTile(this.world, x, z);
-        tile.generate(pos, primer);
-    }
-
     public void generateBiomeBlocks(int chunkX, int chunkZ, ChunkPrimer primer, Biome[] biomes) {
         OffsetChunkPrimer mockPrimer = new OffsetChunkPrimer(primer, 62 - OCEAN_HEIGHT);
         double scale = 0.03125D;
@@ -96,6 +98,9 @@ public class ChunkGeneratorEarth implements IChunkGenerator {
 
     @Override
     public Chunk provideChunk(int x, int z) {
+        if (Earth.prefetcher != null) {
+            Earth.prefetcher.onChunkRequested(this.earthGenerator, x, z);
+        }
         this.random.setSeed((long) x * 341873128712L + (long) z * 132897987541L);
         ChunkPrimer primer = new ChunkPrimer();
         this.setBlocksInChunk(x, z, primer);
@@ -121,6 +126,9 @@ public class ChunkGeneratorEarth implements IChunkGenerator {
 
     @Override
     public void populate(int chunkX, int chunkZ) {
+        if (this.structures) {
+            StructureRetrofitter.retrofit(this.world, chunkX, chunkZ);
+        }
         BlockFalling.fallInstantly = true;
         int x = chunkX * 16;
         int z = chunkZ * 16;
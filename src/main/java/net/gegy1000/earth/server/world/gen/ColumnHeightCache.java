@@ -0,0 +1,72 @@
+package net.gegy1000.earth.server.world.gen;
+
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ColumnHeightCache implements HeightProvider {
+    private final EarthGenerator generator;
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ColumnHeightCache(EarthGenerator generator, int capacity) {
+        this.generator = generator;
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.entries = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public int[] get(int chunkX, int chunkZ) {
+        long key = ChunkPos.asLong(chunkX, chunkZ);
+        int index = this.index(key);
+        Entry entry = this.entries.get(index);
+        if (entry != null && entry.key == key) {
+            this.hits.increment();
+            return entry.heights;
+        }
+        this.misses.increment();
+        int[] heights = new int[256];
+        this.generator.fillHeights(chunkX, chunkZ, heights);
+        this.entries.set(index, new Entry(key, heights));
+        return heights;
+    }
+
+    @Override
+    public int provideHeight(int x, int z) {
+        return this.get(x >> 4, z >> 4)[(x & 15) + (z & 15) * 16];
+    }
+
+    private int index(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & this.mask;
+    }
+
+    public void clear() {
+        for (int i = 0; i < this.entries.length(); i++) {
+            this.entries.set(i, null);
+        }
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    private static class Entry {
+        private final long key;
+        private final int[] heights;
+
+        private Entry(long key, int[] heights) {
+            this.key = key;
+            this.heights = heights;
+        }
+    }
+}
@@ -3,17 +3,28 @@ package net.gegy1000.earth.server.world.gen;
 import com.google.common.collect.HashMultimap;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Point;
+import net.gegy1000.earth.Earth;
 import net.gegy1000.earth.server.biome.EarthBiome;
 import net.minecraft.init.Biomes;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.biome.Biome;
 
+import java.io.File;
 import java.util.Map;
 import java.util.Random;
 
 public class EarthGenerator implements HeightProvider {
+    public static final File RASTER_STORE = new File(".", "mods/earth/data");
+
+    static final String HEIGHTMAP_PATH = "assets/earth/data/heightmap";
+    static final String BIOMEMAP_PATH = "assets/earth/data/biomemap";
+
     protected ImageDataMap heightmap;
     protected ImageDataMap biomemap;
+    protected RasterPyramid heightPyramid;
+    protected RasterPyramid biomePyramid;
+
+    protected final ColumnHeightCache columnHeights = new ColumnHeightCache(this, 1024);
 
     protected static final double WORLD_SCALE = 20.0;
 
@@ -25,6 +36,46 @@ public class EarthGenerator implements HeightProvider {
     protected static final float STANDARD_PARALLEL = 0.0F;
     protected static final float CENTRAL_MERIDIAN = 0.0F;
 
+    private static final double PARALLEL_SCALE = MathHelper.cos((float) Math.toRadians(STANDARD_PARALLEL));
+
+    private static final EarthBiome UNKNOWN_BIOME = EarthBiome.OCEAN;
+
+    static final ImageDataMap.TileFactory BIOME_FACTORY = (image, width, height) -> {
+        byte[] biomes = null;
+        if (image != null) {
+            biomes = new byte[width * height];
+            ImageDataMap.decode(image, width, height, biomes, new ImageDataMap.PixelMapper() {
+                private int lastColour = -1;
+                private int lastIndex;
+                private boolean warned;
+
+                @Override
+                public int map(int colour) {
+                    if (colour != this.lastColour) {
+                        this.lastColour = colour;
+                        int index = EarthBiome.getIndex(colour);
+                        if (index == -1) {
+                            if (!this.warned) {
+                                Earth.LOGGER.warn("Unknown biome colour #{} in biome tile, using {}", String.format("%06X", colour), UNKNOWN_BIOME);
+                                this.warned = true;
+                            }
+                            index = UNKNOWN_BIOME.ordinal();
+                        }
+                        this.lastIndex = index;
+                    }
+                    return this.lastIndex;
+                }
+            });
+        }
+        return new ImageDataMap.Tile(biomes, width, height);
+    };
+
+    protected static final ThreadLocal<HeightKernel> HEIGHT_KERNEL = ThreadLocal.withInitial(HeightKernel::new);
+    protected static final ThreadLocal<BiomeKernel> BIOME_KERNEL = ThreadLocal.withInitial(BiomeKernel::new);
+
+    private static final EarthBiome[] EARTH_BIOMES = EarthBiome.values();
+    private static final Biome[] BIOME_PALETTE = new Biome[EARTH_BIOMES.length];
+
     public void load() {
         if (this.heightmap == null) {
             this.loadHeightmap();
@@ -35,24 +86,23 @@ public class EarthGenerator implements HeightProvider {
     }
 
     public void loadHeightmap() {
-        this.heightmap = new ImageDataMap(43200, 21600, 1350, 1350, "assets/earth/data/heightmap");
+        this.heightmap = createHeightmap();
+        this.heightmap.setStore(MappedRasterStore.openIfPresent(new File(RASTER_STORE, "heightmap" + MappedRasterStore.EXTENSION)));
+        this.heightPyramid = new RasterPyramid(this.heightmap, HEIGHTMAP_PATH);
     }
 
     public void loadBiomemap() {
-        this.biomemap = new ImageDataMap(43200, 21600, 1350, 1350, "assets/earth/data/biomemap", (image, width, height) -> {
-            byte[] heights = null;
-            if (image != null) {
-                heights = new byte[width * height];
-                int i = 0;
-                for (int y = 0; y < height; y++) {
-                    for (int x = 0; x < width; x++) {
-                        int colour = image.getRGB(x, y) & 0xFFFFFF;
-                        heights[i++] = (byte) (EarthBiome.get(colour).ordinal() & 0xFF);
-                    }
-                }
-            }
-            return new ImageDataMap.Tile(heights, width, height);
-        });
+        this.biomemap = createBiomemap();
+        this.biomemap.setStore(MappedRasterStore.openIfPresent(new File(RASTER_STORE, "biomemap" + MappedRasterStore.EXTENSION)));
+        this.biomePyramid = new RasterPyramid(this.biomemap, BIOMEMAP_PATH);
+    }
+
+    static ImageDataMap createHeightmap() {
+        return new ImageDataMap(43200, 21600, 1350, 1350, HEIGHTMAP_PATH);
+    }
+
+    static ImageDataMap createBiomemap() {
+        return new ImageDataMap(43200, 21600, 1350, 1350, BIOMEMAP_PATH, BIOME_FACTORY);
     }
 
     public int getGenerationHeight(int x, int z) {
@@ -88,6 +138,75 @@ public class EarthGenerator implements HeightProvider {
         return value;
     }
 
+    public void fillHeights(int chunkX, int chunkZ, int[] heights) {
+        int width = this.getWidth();
+        int height = this.biomemap.getHeight();
+
+        double worldScale = this.getWorldScale();
+
+        int scaledWidth = (int) (width * worldScale);
+        int scaledHeight = (int) (height * worldScale);
+
+        HeightKernel kernel = HEIGHT_KERNEL.get();
+        int[] originX = kernel.originX;
+        int[] originY = kernel.originY;
+        double[] intermediateX = kernel.intermediateX;
+        double[] intermediateY = kernel.intermediateY;
+
+        int chunkWorldX = chunkX << 4;
+        int chunkWorldZ = chunkZ << 4;
+        for (int i = 0; i < 16; i++) {
+            int x = (int) (chunkWorldX + i + WORLD_OFFSET_X * worldScale);
+            int z = (int) (chunkWorldZ + i + WORLD_OFFSET_Z * worldScale);
+            double xScaled = (double) x / (scaledWidth - 1) * (width - 1);
+            double yScaled = (double) z / (scaledHeight - 1) * (height - 1);
+            originX[i] = (int) xScaled;
+            originY[i] = (int) yScaled;
+            intermediateX[i] = xScaled - originX[i];
+            intermediateY[i] = yScaled - originY[i];
+        }
+
+        int minX = originX[0] - 1;
+        int minY = originY[0] - 1;
+        int windowWidth = originX[15] + 3 - minX;
+        int windowHeight = originY[15] + 3 - minY;
+
+        double[] window = kernel.window(windowWidth * windowHeight);
+        for (int v = 0; v < windowHeight; v++) {
+            for (int u = 0; u < windowWidth; u++) {
+                window[u + v * windowWidth] = this.getHeight(minX + u, minY + v);
+            }
+        }
+
+        double[] columns = kernel.columns(windowWidth * 16);
+        for (int z = 0; z < 16; z++) {
+            double intermediate = intermediateY[z];
+            int rowOffset = (originY[z] - 1 - minY) * windowWidth;
+            if (z > 0 && originY[z] == originY[z - 1] && intermediate == intermediateY[z - 1]) {
+                System.arraycopy(columns, (z - 1) * windowWidth, columns, z * windowWidth, windowWidth);
+                continue;
+            }
+            for (int u = 0; u < windowWidth; u++) {
+                int index = rowOffset + u;
+                columns[u + z * windowWidth] = cubic(window[index], window[index + windowWidth], window[index + windowWidth * 2], window[index + windowWidth * 3], intermediate);
+            }
+        }
+
+        for (int z = 0; z < 16; z++) {
+            int rowOffset = z * windowWidth;
+            for (int x = 0; x < 16; x++) {
+                int index = rowOffset + originX[x] - 1 - minX;
+                double interpolated = cubic(columns[index], columns[index + 1], columns[index + 2], columns[index + 3], intermediateX[x]);
+                int value = (int) Math.round(interpolated);
+                heights[x + z * 16] = Math.min(0xff, Math.max(value, 0));
+            }
+        }
+    }
+
+    public void fillBiomes(Biome[] biomes, int x, int z, int width, int length) {
+        BIOME_KERNEL.get().fill(this, biomes, x, z, width, length);
+    }
+
     public Biome getGenerationBiome(int x, int z) {
         int width = this.biomemap.getWidth();
         int height = this.biomemap.getHeight();
@@ -176,12 +295,20 @@ public class EarthGenerator implements HeightProvider {
     }
 
     private static double cubic(double[] p, double x) {
-        return p[1] + 0.5 * x * (p[2] - p[0] + x * (2.0 * p[0] - 5.0 * p[1] + 4.0 * p[2] - p[3] + x * (3.0 * (p[1] - p[2]) + p[3] - p[0])));
+        return cubic(p[0], p[1], p[2], p[3], x);
+    }
+
+    static double cubic(double p0, double p1, double p2, double p3, double x) {
+        return p1 + 0.5 * x * (p2 - p0 + x * (2.0 * p0 - 5.0 * p1 + 4.0 * p2 - p3 + x * (3.0 * (p1 - p2) + p3 - p0)));
     }
 
     @Override
     public int provideHeight(int x, int z) {
-        return this.getGenerationHeight(x, z);
+        return this.columnHeights.provideHeight(x, z);
+    }
+
+    public ColumnHeightCache getColumnHeights() {
+        return this.columnHeights;
     }
 
     protected static class Bicubic {
@@ -198,6 +325,29 @@ public class EarthGenerator implements HeightProvider {
         }
     }
 
+    protected static class HeightKernel {
+        private final int[] originX = new int[16];
+        private final int[] originY = new int[16];
+        private final double[] intermediateX = new double[16];
+        private final double[] intermediateY = new double[16];
+        private double[] window = new double[36];
+        private double[] columns = new double[96];
+
+        private double[] window(int size) {
+            if (this.window.length < size) {
+                this.window = new double[size];
+            }
+            return this.window;
+        }
+
+        private double[] columns(int size) {
+            if (this.columns.length < size) {
+                this.columns = new double[size];
+            }
+            return this.columns;
+        }
+    }
+
     protected double sampleHeight(int x, int y) {
         if (x < 0 || x >= this.getWidth() || y < 0 || y >= this.getHeight()) {
             return 0;
@@ -206,7 +356,11 @@ public class EarthGenerator implements HeightProvider {
     }
 
     protected double getHeight(int x, int y) {
-        double height = this.sampleHeight(x, y) * 0.9;
+        return toBlockHeight(this.sampleHeight(x, y));
+    }
+
+    private static double toBlockHeight(double sample) {
+        double height = sample * 0.9;
         if (height > 0) {
             height += 12;
         }
@@ -214,12 +368,48 @@ public class EarthGenerator implements HeightProvider {
     }
 
     public Biome getBiome(int x, int y) {
-        try {
-            return EarthBiome.values()[(this.biomemap.sample(x, y))].get();
-        } catch (Exception e) {
-            e.printStackTrace();
+        return this.getBiomeForIndex(this.biomemap.sample(x, y));
+    }
+
+    protected Biome getBiomeForIndex(int index) {
+        if (index < 0 || index >= BIOME_PALETTE.length) {
+            Earth.LOGGER.warn("Invalid biome index {}", index);
+            return DEFAULT_BIOME;
+        }
+        Biome biome = BIOME_PALETTE[index];
+        if (biome == null) {
+            biome = EARTH_BIOMES[index].get();
+            BIOME_PALETTE[index] = biome;
+        }
+        return biome;
+    }
+
+    public int getCoarseLevel(int radius) {
+        double pixels = radius / this.getWorldScale();
+        int level = 0;
+        while (level < RasterPyramid.MAX_LEVEL && (1 << (level + 1)) <= pixels) {
+            level++;
+        }
+        return level;
+    }
+
+    public Biome getCoarseBiome(int level, int x, int z) {
+        if (this.biomePyramid == null) {
             return DEFAULT_BIOME;
         }
+        return this.getBiomeForIndex(this.biomePyramid.sample(level, (int) this.getDataX(x) >> level, (int) this.getDataY(z) >> level));
+    }
+
+    public double getDataX(double x) {
+        int width = this.getWidth();
+        double worldScale = this.getWorldScale();
+        return (x + WORLD_OFFSET_X * worldScale) / ((int) (width * worldScale) - 1) * (width - 1);
+    }
+
+    public double getDataY(double z) {
+        int height = this.getHeight();
+        double worldScale = this.getWorldScale();
+        return (z + WORLD_OFFSET_Z * worldScale) / ((int) (height * worldScale) - 1) * (height - 1);
     }
 
     public Coordinate toWorldCoordinates(Point point) {
@@ -235,7 +425,7 @@ public class EarthGenerator implements HeightProvider {
     }
 
     public double toLongitude(double x) {
-        return this.fromX((x / (MathHelper.cos((float) Math.toRadians(STANDARD_PARALLEL)))) + CENTRAL_MERIDIAN);
+        return this.fromX((x / PARALLEL_SCALE) + CENTRAL_MERIDIAN);
     }
 
     public double fromLatitude(double latitude) {
@@ -243,7 +433,20 @@ public class EarthGenerator implements HeightProvider {
     }
 
     public double fromLongitude(double longitude) {
-        return this.toX((longitude - CENTRAL_MERIDIAN) * MathHelper.cos((float) Math.toRadians(STANDARD_PARALLEL)));
+        return this.toX((longitude - CENTRAL_MERIDIAN) * PARALLEL_SCALE);
+    }
+
+    public void fromCoordinates(double[] coordinates, int count) {
+        double scale = this.getWorldScale();
+        int width = this.getWidth();
+        int height = this.getHeight();
+        for (int i = 0; i < count; i++) {
+            int index = i << 1;
+            double longitude = (coordinates[index] - CENTRAL_MERIDIAN) * PARALLEL_SCALE;
+            double latitude = coordinates[index + 1] - STANDARD_PARALLEL;
+            coordinates[index] = ((longitude + 180.0) / 360.0 * (double) width - WORLD_OFFSET_X) * scale;
+            coordinates[index + 1] = (height - (latitude + 90.0) / 180.0 * (double) height - WORLD_OFFSET_Z) * scale;
+        }
     }
 
     protected double fromZ(double z) {
@@ -269,6 +472,22 @@ public class EarthGenerator implements HeightProvider {
         return (scaledX - WORLD_OFFSET_X) * scale;
     }
 
+    public ImageDataMap getHeightmap() {
+        return this.heightmap;
+    }
+
+    public ImageDataMap getBiomemap() {
+        return this.biomemap;
+    }
+
+    public RasterPyramid getHeightPyramid() {
+        return this.heightPyramid;
+    }
+
+    public RasterPyramid getBiomePyramid() {
+        return this.biomePyramid;
+    }
+
     protected int getWidth() {
         return this.heightmap.getWidth();
     }
@@ -277,7 +496,7 @@ public class EarthGenerator implements HeightProvider {
         return this.heightmap.getHeight();
     }
 
-    protected double getWorldScale() {
+    public double getWorldScale() {
         return WORLD_SCALE;
     }
 
@@ -1,28 +1,24 @@
 package net.gegy1000.earth.server.world.gen;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import net.gegy1000.earth.Earth;
-import net.minecraft.util.math.ChunkPos;
+import org.apache.commons.io.IOUtils;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.TimeUnit;
 
 public class ImageDataMap {
-    private static final TileFactory DEFAULT_FACTORY = (image, width, height) -> {
+    static final TileFactory DEFAULT_FACTORY = (image, width, height) -> {
         byte[] heights = null;
         if (image != null) {
             heights = new byte[width * height];
-            int i = 0;
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    heights[i++] = (byte) (image.getRGB(x, y) & 0xFF);
-                }
-            }
+            decode(image, width, height, heights, colour -> colour & 0xFF);
         }
         return new Tile(heights, width, height);
     };
@@ -38,18 +34,12 @@ public class ImageDataMap {
 
     private final String[] tileAccess;
 
-    private final LoadingCache<ChunkPos, Tile> tiles = CacheBuilder.newBuilder()
-            .expireAfterAccess(20, TimeUnit.SECONDS)
-            .build(new CacheLoader<ChunkPos, Tile>() {
-                @Override
-                public Tile load(ChunkPos pos) {
-                    return ImageDataMap.this.load(pos.chunkXPos, pos.chunkZPos);
-                }
-            });
-
+    private final TileCache tiles;
 
     private final TileFactory factory;
 
+    private MappedRasterStore store;
+
     public ImageDataMap(int width, int height, int tileWidth, int tileHeight, String dataPath) {
         this(width, height, tileWidth, tileHeight, dataPath, DEFAULT_FACTORY);
     }
@@ -64,13 +54,29 @@ public class ImageDataMap {
         this.tileAccess = new String[this.tileCountX * this.tileCountY];
         for (int x = 0; x < this.tileCountX; x++) {
             for (int y = 0; y < this.tileCountY; y++) {
-                this.tileAccess[x + (y * this.tileCountX)] = "/" + dataPath + "_" + x + "_" + y + ".png";
+                this.tileAccess[x + (y * this.tileCountX)] = "/" + dataPath + "_" + x + "_" + y;
             }
         }
         this.factory = factory;
+        this.tiles = new TileCache(this.tileCountX, this.tileCountY, TileBudget.SHARED, this::load);
+    }
+
+    public void setStore(MappedRasterStore store) {
+        if (store != null && !store.matches(this)) {
+            Earth.LOGGER.warn("Ignoring raster store with mismatched dimensions {}x{}", store.getWidth(), store.getHeight());
+            return;
+        }
+        this.store = store;
+    }
+
+    public boolean hasStore() {
+        return this.store != null;
     }
 
     public int sample(int x, int y) {
+        if (this.store != null) {
+            return this.store.sample(x, y);
+        }
         int tileX = x / this.tileWidth;
         int tileY = y / this.tileHeight;
         int tileSampleX = x % this.tileWidth;
@@ -83,17 +89,32 @@ public class ImageDataMap {
     }
 
     protected Tile get(int x, int y) {
-        return this.tiles.getUnchecked(new ChunkPos(x, y));
+        return this.tiles.get(x, y);
+    }
+
+    public TileCache getCache() {
+        return this.tiles;
     }
 
     protected Tile load(int x, int y) {
-        InputStream in = ImageDataMap.class.getResourceAsStream(this.tileAccess[x + (y * this.tileCountX)]);
+        String access = this.tileAccess[x + (y * this.tileCountX)];
+        try (InputStream in = ImageDataMap.class.getResourceAsStream(access + RasterTileFormat.EXTENSION)) {
+            if (in != null) {
+                Earth.LOGGER.debug("Loaded Earth raster tile at {}, {}", x, y);
+                return RasterTileFormat.read(in, this.tileWidth, this.tileHeight);
+            }
+        } catch (IOException e) {
+            Earth.LOGGER.warn("Failed to read Earth raster tile at {}, {}, falling back to image", x, y, e);
+        }
+        InputStream in = ImageDataMap.class.getResourceAsStream(access + ".png");
         if (in != null) {
             try {
                 Earth.LOGGER.debug("Loaded Earth image tile at {}, {}", x, y);
                 return this.factory.create(ImageIO.read(in), this.tileWidth, this.tileHeight);
             } catch (IOException e) {
                 e.printStackTrace();
+            } finally {
+                IOUtils.closeQuietly(in);
             }
         } else {
             return new Tile(null, this.tileWidth, this.tileHeight);
@@ -109,6 +130,47 @@ public class ImageDataMap {
         return this.height;
     }
 
+    static void decode(BufferedImage image, int width, int height, byte[] out, PixelMapper mapper) {
+        WritableRaster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        boolean direct = raster.getParent() == null && raster.getDataBuffer() instanceof DataBufferByte && sampleModel instanceof ComponentSampleModel
+                && raster.getNumBands() >= 3 && !image.isAlphaPremultiplied() && image.getColorModel() instanceof ComponentColorModel && image.getColorModel().getColorSpace().isCS_sRGB();
+        if (direct) {
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            ComponentSampleModel componentModel = (ComponentSampleModel) sampleModel;
+            int pixelStride = componentModel.getPixelStride();
+            int scanlineStride = componentModel.getScanlineStride();
+            int[] bandOffsets = componentModel.getBandOffsets();
+            int red = bandOffsets[0];
+            int green = bandOffsets[1];
+            int blue = bandOffsets[2];
+            int i = 0;
+            for (int y = 0; y < height; y++) {
+                int index = y * scanlineStride;
+                for (int x = 0; x < width; x++) {
+                    int colour = (data[index + red] & 0xFF) << 16 | (data[index + green] & 0xFF) << 8 | (data[index + blue] & 0xFF);
+                    out[i++] = (byte) mapper.map(colour);
+                    index += pixelStride;
+                }
+            }
+        } else {
+            int i = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    out[i++] = (byte) mapper.map(image.getRGB(x, y) & 0xFFFFFF);
+                }
+            }
+        }
+    }
+
+    public int getTileWidth() {
+        return this.tileWidth;
+    }
+
+    public int getTileHeight() {
+        return this.tileHeight;
+    }
+
     public static class Tile {
         private final int width;
         private final int height;
@@ -135,6 +197,10 @@ public class ImageDataMap {
             return this.height;
         }
 
+        public byte[] getData() {
+            return this.heights;
+        }
+
         private int getIndex(int x, int y) {
             return x + (y * this.width);
         }
@@ -143,4 +209,8 @@ public class ImageDataMap {
     public interface TileFactory {
         Tile create(BufferedImage image, int width, int height);
     }
+
+    public interface PixelMapper {
+        int map(int colour);
+    }
 }
@@ -0,0 +1,188 @@
+package net.gegy1000.earth.server.world.gen;
+
+import net.gegy1000.earth.Earth;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class MappedRasterStore {
+    public static final String EXTENSION = ".raster";
+
+    public static final int MAGIC = 0x53524D45;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int INDEX_ENTRY_SIZE = 12;
+    private static final int PAGE_ALIGNMENT = 4096;
+
+    private static final long UNIFORM = -1;
+
+    private final int width;
+    private final int height;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int tileCountX;
+    private final int tileCountY;
+
+    private final long[] offsets;
+    private final int[] uniformValues;
+
+    private final MappedByteBuffer buffer;
+
+    private MappedRasterStore(ByteBuffer header, MappedByteBuffer buffer) throws IOException {
+        if (header.remaining() < HEADER_SIZE) {
+            throw new IOException("Truncated raster store header");
+        }
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Invalid raster store header");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported raster store version " + version);
+        }
+        this.width = header.getInt();
+        this.height = header.getInt();
+        this.tileWidth = header.getInt();
+        this.tileHeight = header.getInt();
+        this.tileCountX = header.getInt();
+        this.tileCountY = header.getInt();
+        if (this.width <= 0 || this.height <= 0 || this.tileWidth <= 0 || this.tileHeight <= 0 || this.tileCountX <= 0 || this.tileCountY <= 0) {
+            throw new IOException("Invalid raster store dimensions");
+        }
+        long tileSize = (long) this.tileWidth * this.tileHeight;
+        long tileCount = (long) this.tileCountX * this.tileCountY;
+        if ((long) this.tileCountX * this.tileWidth < this.width || (long) this.tileCountY * this.tileHeight < this.height || tileSize > Integer.MAX_VALUE) {
+            throw new IOException("Invalid raster store dimensions");
+        }
+        if (tileCount > header.remaining() / INDEX_ENTRY_SIZE) {
+            throw new IOException("Truncated raster store index");
+        }
+        this.offsets = new long[(int) tileCount];
+        this.uniformValues = new int[(int) tileCount];
+        for (int i = 0; i < tileCount; i++) {
+            long offset = header.getLong();
+            if (offset != UNIFORM && (offset < HEADER_SIZE || offset + tileSize > buffer.capacity())) {
+                throw new IOException("Raster store tile " + i + " is outside the file");
+            }
+            this.offsets[i] = offset;
+            this.uniformValues[i] = header.getInt();
+        }
+        this.buffer = buffer;
+    }
+
+    public static MappedRasterStore open(File file) throws IOException {
+        try (RandomAccessFile access = new RandomAccessFile(file, "r")) {
+            FileChannel channel = access.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Raster store " + file + " is too large to map");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new MappedRasterStore(buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN), buffer);
+        }
+    }
+
+    public static MappedRasterStore openIfPresent(File file) {
+        if (file.exists()) {
+            try {
+                MappedRasterStore store = MappedRasterStore.open(file);
+                Earth.LOGGER.info("Using memory-mapped raster store {}", file);
+                return store;
+            } catch (IOException e) {
+                Earth.LOGGER.warn("Failed to open raster store {}", file, e);
+            }
+        }
+        return null;
+    }
+
+    public static void write(ImageDataMap map, File file) throws IOException {
+        int tileCountX = map.getWidth() / map.getTileWidth();
+        int tileCountY = map.getHeight() / map.getTileHeight();
+        int tileCount = tileCountX * tileCountY;
+        long dataStart = align(HEADER_SIZE + (long) tileCount * INDEX_ENTRY_SIZE);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + tileCount * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(map.getWidth());
+        header.putInt(map.getHeight());
+        header.putInt(map.getTileWidth());
+        header.putInt(map.getTileHeight());
+        header.putInt(tileCountX);
+        header.putInt(tileCountY);
+
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            access.setLength(0);
+            FileChannel channel = access.getChannel();
+            long offset = dataStart;
+            for (int tileY = 0; tileY < tileCountY; tileY++) {
+                for (int tileX = 0; tileX < tileCountX; tileX++) {
+                    ImageDataMap.Tile tile = map.load(tileX, tileY);
+                    byte[] data = tile != null ? tile.getData() : null;
+                    header.position(HEADER_SIZE + (tileX + tileY * tileCountX) * INDEX_ENTRY_SIZE);
+                    int uniform = getUniformValue(data);
+                    if (uniform != -1) {
+                        header.putLong(UNIFORM);
+                        header.putInt(uniform);
+                    } else {
+                        header.putLong(offset);
+                        header.putInt(0);
+                        channel.write(ByteBuffer.wrap(data), offset);
+                        offset = align(offset + data.length);
+                    }
+                }
+            }
+            header.position(0);
+            channel.write(header, 0);
+            access.setLength(Math.max(offset, dataStart));
+        }
+    }
+
+    private static int getUniformValue(byte[] data) {
+        if (data == null) {
+            return 0;
+        }
+        byte value = data[0];
+        for (byte b : data) {
+            if (b != value) {
+                return -1;
+            }
+        }
+        return value & 0xFF;
+    }
+
+    private static long align(long offset) {
+        return (offset + PAGE_ALIGNMENT - 1) / PAGE_ALIGNMENT * PAGE_ALIGNMENT;
+    }
+
+    public int sample(int x, int y) {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+            return 0;
+        }
+        int tileIndex = x / this.tileWidth + (y / this.tileHeight) * this.tileCountX;
+        long offset = this.offsets[tileIndex];
+        if (offset == UNIFORM) {
+            return this.uniformValues[tileIndex];
+        }
+        int index = (x % this.tileWidth) + (y % this.tileHeight) * this.tileWidth;
+        return this.buffer.get((int) offset + index) & 0xFF;
+    }
+
+    public boolean matches(ImageDataMap map) {
+        return this.width == map.getWidth() && this.height == map.getHeight() && this.tileWidth == map.getTileWidth() && this.tileHeight == map.getTileHeight();
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+}
@@ -3,6 +3,8 @@ package net.gegy1000.earth.server.world.gen;
 import net.minecraft.init.Biomes;
 import net.minecraft.world.biome.Biome;
 
+import java.util.Arrays;
+
 public class OSMGenerator extends EarthGenerator {
     protected static final double FULL_SCALE = 926.62;
     protected static final Biome DEFAULT_BIOME = Biomes.PLAINS;
@@ -29,13 +31,28 @@ public class OSMGenerator extends EarthGenerator {
         return 32;
     }
 
+    @Override
+    public void fillHeights(int chunkX, int chunkZ, int[] heights) {
+        Arrays.fill(heights, 0, 256, 32);
+    }
+
+    @Override
+    public void fillBiomes(Biome[] biomes, int x, int z, int width, int length) {
+        Arrays.fill(biomes, 0, width * length, DEFAULT_BIOME);
+    }
+
     @Override
     public Biome getGenerationBiome(int x, int z) {
         return DEFAULT_BIOME;
     }
 
     @Override
-    protected double getWorldScale() {
+    public Biome getCoarseBiome(int level, int x, int z) {
+        return DEFAULT_BIOME;
+    }
+
+    @Override
+    public double getWorldScale() {
         return this.scale;
     }
 
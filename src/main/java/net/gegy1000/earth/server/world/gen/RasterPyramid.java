@@ -0,0 +1,123 @@
+package net.gegy1000.earth.server.world.gen;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class RasterPyramid {
+    public static final int MAX_LEVEL = 5;
+
+    public static final Reducer AVERAGE = (a, b, c, d) -> (a + b + c + d + 2) >> 2;
+    public static final Reducer MODE = (a, b, c, d) -> {
+        if (a == b || a == c || a == d) {
+            return a;
+        } else if (b == c || b == d) {
+            return b;
+        } else if (c == d) {
+            return c;
+        }
+        return a;
+    };
+
+    private final ImageDataMap[] levels = new ImageDataMap[MAX_LEVEL + 1];
+    private final boolean[] present = new boolean[MAX_LEVEL + 1];
+
+    public RasterPyramid(ImageDataMap base, String dataPath) {
+        this.levels[0] = base;
+        this.present[0] = true;
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            int width = base.getWidth() >> level;
+            int height = base.getHeight() >> level;
+            int tileWidth = Math.min(base.getTileWidth(), width);
+            int tileHeight = Math.min(base.getTileHeight(), height);
+            String levelPath = getLevelPath(dataPath, level);
+            this.levels[level] = new ImageDataMap(width, height, tileWidth, tileHeight, levelPath);
+            this.present[level] = RasterPyramid.class.getResource("/" + levelPath + "_0_0" + RasterTileFormat.EXTENSION) != null;
+        }
+    }
+
+    public static String getLevelPath(String dataPath, int level) {
+        return dataPath + "_mip" + level;
+    }
+
+    public int sample(int level, int x, int y) {
+        level = Math.max(0, Math.min(level, MAX_LEVEL));
+        ImageDataMap map = this.levels[level];
+        if (x < 0 || y < 0 || x >= map.getWidth() || y >= map.getHeight()) {
+            return 0;
+        }
+        if (this.present[level]) {
+            return map.sample(x, y);
+        }
+        int half = (1 << level) >> 1;
+        return this.levels[0].sample((x << level) + half, (y << level) + half);
+    }
+
+    public boolean isPresent(int level) {
+        return level >= 0 && level <= MAX_LEVEL && this.present[level];
+    }
+
+    public int getWidth(int level) {
+        return this.levels[level].getWidth();
+    }
+
+    public int getHeight(int level) {
+        return this.levels[level].getHeight();
+    }
+
+    public static void write(ImageDataMap base, String name, Reducer reducer, File output) throws IOException {
+        int previousWidth = base.getWidth();
+        int previousHeight = base.getHeight();
+        byte[] previous = null;
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            int width = previousWidth >> 1;
+            int height = previousHeight >> 1;
+            byte[] data = new byte[width * height];
+            for (int y = 0; y < height; y++) {
+                int sourceY = y << 1;
+                for (int x = 0; x < width; x++) {
+                    int sourceX = x << 1;
+                    int a, b, c, d;
+                    if (previous == null) {
+                        a = base.sample(sourceX, sourceY);
+                        b = base.sample(sourceX + 1, sourceY);
+                        c = base.sample(sourceX, sourceY + 1);
+                        d = base.sample(sourceX + 1, sourceY + 1);
+                    } else {
+                        int index = sourceX + sourceY * previousWidth;
+                        a = previous[index] & 0xFF;
+                        b = previous[index + 1] & 0xFF;
+                        c = previous[index + previousWidth] & 0xFF;
+                        d = previous[index + previousWidth + 1] & 0xFF;
+                    }
+                    data[x + y * width] = (byte) reducer.reduce(a, b, c, d);
+                }
+            }
+            writeLevel(data, width, height, Math.min(base.getTileWidth(), width), Math.min(base.getTileHeight(), height), getLevelPath(name, level), output);
+            previous = data;
+            previousWidth = width;
+            previousHeight = height;
+        }
+    }
+
+    private static void writeLevel(byte[] data, int width, int height, int tileWidth, int tileHeight, String name, File output) throws IOException {
+        for (int tileY = 0; tileY < height / tileHeight; tileY++) {
+            for (int tileX = 0; tileX < width / tileWidth; tileX++) {
+                byte[] tileData = new byte[tileWidth * tileHeight];
+                for (int y = 0; y < tileHeight; y++) {
+                    System.arraycopy(data, tileX * tileWidth + (tileY * tileHeight + y) * width, tileData, y * tileWidth, tileWidth);
+                }
+                File file = new File(output, name + "_" + tileX + "_" + tileY + RasterTileFormat.EXTENSION);
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                    RasterTileFormat.write(out, new ImageDataMap.Tile(tileData, tileWidth, tileHeight), true);
+                }
+            }
+        }
+    }
+
+    public interface Reducer {
+        int reduce(int a, int b, int c, int d);
+    }
+}
@@ -0,0 +1,114 @@
+package net.gegy1000.earth.server.world.gen;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class RasterTileConverter {
+    private static final Pattern TILE_NAME = Pattern.compile("(heightmap|biomemap)_(\\d+)_(\\d+)\\.png");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("--store")) {
+            writeStores(new File(args[1]));
+            return;
+        }
+        if (args.length == 2 && args[0].equals("--pyramid")) {
+            writePyramids(new File(args[1]));
+            return;
+        }
+        if (args.length < 2) {
+            System.out.println("Usage: RasterTileConverter <png directory> <output directory> [--raw]");
+            System.out.println("       RasterTileConverter --store <output directory>");
+            System.out.println("       RasterTileConverter --pyramid <output directory>");
+            return;
+        }
+        File input = new File(args[0]);
+        File output = new File(args[1]);
+        boolean deflate = !(args.length > 2 && args[2].equals("--raw"));
+        if (!output.exists() && !output.mkdirs()) {
+            throw new IOException("Failed to create output directory " + output);
+        }
+        File[] files = input.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list " + input);
+        }
+        Arrays.sort(files);
+
+        long imageTime = 0;
+        long rasterTime = 0;
+        long imageBytes = 0;
+        long rasterBytes = 0;
+        int count = 0;
+
+        for (File file : files) {
+            Matcher matcher = TILE_NAME.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            ImageDataMap.TileFactory factory = matcher.group(1).equals("biomemap") ? EarthGenerator.BIOME_FACTORY : ImageDataMap.DEFAULT_FACTORY;
+
+            byte[] image = Files.readAllBytes(file.toPath());
+            long start = System.nanoTime();
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(image));
+            ImageDataMap.Tile tile = factory.create(decoded, decoded.getWidth(), decoded.getHeight());
+            imageTime += System.nanoTime() - start;
+
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            RasterTileFormat.write(encoded, tile, deflate);
+            byte[] raster = encoded.toByteArray();
+
+            start = System.nanoTime();
+            ImageDataMap.Tile read = RasterTileFormat.read(new ByteArrayInputStream(raster), tile.getWidth(), tile.getHeight());
+            rasterTime += System.nanoTime() - start;
+            if (!Arrays.equals(read.getData(), tile.getData())) {
+                throw new IOException("Raster tile round trip mismatch for " + file.getName());
+            }
+
+            String name = file.getName().substring(0, file.getName().length() - ".png".length()) + RasterTileFormat.EXTENSION;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(output, name)))) {
+                out.write(raster);
+            }
+
+            imageBytes += image.length;
+            rasterBytes += raster.length;
+            count++;
+        }
+
+        if (count > 0) {
+            System.out.printf("Converted %d tiles (%d -> %d bytes)%n", count, imageBytes, rasterBytes);
+            System.out.printf("PNG decode: %.2fms/tile, raster decode: %.2fms/tile%n", imageTime / 1e6 / count, rasterTime / 1e6 / count);
+        } else {
+            System.out.println("No tiles found in " + input);
+        }
+    }
+
+    private static void writeStores(File output) throws IOException {
+        if (!output.exists() && !output.mkdirs()) {
+            throw new IOException("Failed to create output directory " + output);
+        }
+        long start = System.currentTimeMillis();
+        MappedRasterStore.write(EarthGenerator.createHeightmap(), new File(output, "heightmap" + MappedRasterStore.EXTENSION));
+        MappedRasterStore.write(EarthGenerator.createBiomemap(), new File(output, "biomemap" + MappedRasterStore.EXTENSION));
+        System.out.printf("Wrote raster stores to %s in %dms%n", output, System.currentTimeMillis() - start);
+    }
+
+    private static void writePyramids(File output) throws IOException {
+        if (!output.exists() && !output.mkdirs()) {
+            throw new IOException("Failed to create output directory " + output);
+        }
+        long start = System.currentTimeMillis();
+        RasterPyramid.write(EarthGenerator.createHeightmap(), "heightmap", RasterPyramid.AVERAGE, output);
+        RasterPyramid.write(EarthGenerator.createBiomemap(), "biomemap", RasterPyramid.MODE, output);
+        System.out.printf("Wrote raster pyramids to %s in %dms%n", output, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,122 @@
+package net.gegy1000.earth.server.world.gen;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class RasterTileFormat {
+    public static final String EXTENSION = ".bin";
+
+    public static final int MAGIC = 0x31545245;
+    public static final int VERSION = 1;
+
+    public static final int FLAG_DEFLATE = 1;
+    public static final int FLAG_EMPTY = 2;
+
+    private static final int HEADER_SIZE = 18;
+
+    public static ImageDataMap.Tile read(InputStream in, int width, int height) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(IOUtils.toByteArray(in)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Invalid raster tile header");
+        }
+        int version = buffer.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IOException("Unsupported raster tile version " + version);
+        }
+        int flags = buffer.get() & 0xFF;
+        int tileWidth = buffer.getInt();
+        int tileHeight = buffer.getInt();
+        int length = buffer.getInt();
+        if (tileWidth != width || tileHeight != height) {
+            throw new IOException("Expected " + width + "x" + height + " raster tile, got " + tileWidth + "x" + tileHeight);
+        }
+        if ((flags & FLAG_EMPTY) != 0) {
+            return new ImageDataMap.Tile(null, width, height);
+        }
+        if (length < 0 || buffer.remaining() < length) {
+            throw new IOException("Truncated raster tile data");
+        }
+        byte[] data = new byte[width * height];
+        if ((flags & FLAG_DEFLATE) != 0) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(buffer.array(), buffer.position(), length);
+                int read = 0;
+                while (read < data.length && !inflater.finished()) {
+                    int count = inflater.inflate(data, read, data.length - read);
+                    if (count == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    read += count;
+                }
+                if (read != data.length) {
+                    throw new IOException("Truncated raster tile data");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt raster tile data", e);
+            } finally {
+                inflater.end();
+            }
+        } else {
+            if (length != data.length) {
+                throw new IOException("Truncated raster tile data");
+            }
+            buffer.get(data);
+        }
+        return new ImageDataMap.Tile(data, width, height);
+    }
+
+    public static void write(OutputStream out, ImageDataMap.Tile tile, boolean deflate) throws IOException {
+        byte[] data = tile.getData();
+        int flags = 0;
+        byte[] payload = new byte[0];
+        if (data == null) {
+            flags |= FLAG_EMPTY;
+        } else if (deflate) {
+            flags |= FLAG_DEFLATE;
+            payload = deflate(data);
+        } else {
+            payload = data;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.put((byte) VERSION);
+        header.put((byte) flags);
+        header.putInt(tile.getWidth());
+        header.putInt(tile.getHeight());
+        header.putInt(payload.length);
+        out.write(header.array());
+        out.write(payload);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, data.length / 4)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    byte[] grown = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, length);
+                    buffer = grown;
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            byte[] result = new byte[length];
+            System.arraycopy(buffer, 0, result, 0, length);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+}
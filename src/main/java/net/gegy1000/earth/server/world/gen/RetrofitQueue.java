@@ -0,0 +1,111 @@
+package net.gegy1000.earth.server.world.gen;
+
+import net.gegy1000.earth.Earth;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldSavedData;
+import net.minecraft.world.storage.MapStorage;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class RetrofitQueue extends WorldSavedData {
+    private static final String NAME = Earth.MODID + "_retrofit";
+
+    private final Set<Long> pending = new LinkedHashSet<>();
+
+    public RetrofitQueue() {
+        this(NAME);
+    }
+
+    public RetrofitQueue(String name) {
+        super(name);
+    }
+
+    public static RetrofitQueue get(World world) {
+        MapStorage storage = world.getPerWorldStorage();
+        RetrofitQueue queue = (RetrofitQueue) storage.getOrLoadData(RetrofitQueue.class, NAME);
+        if (queue == null) {
+            queue = new RetrofitQueue();
+            storage.setData(NAME, queue);
+        }
+        return queue;
+    }
+
+    public static long toKey(int chunkX, int chunkZ) {
+        return (chunkX & 0xFFFFFFFFL) | (chunkZ & 0xFFFFFFFFL) << 32;
+    }
+
+    public static int getChunkX(long key) {
+        return (int) key;
+    }
+
+    public static int getChunkZ(long key) {
+        return (int) (key >> 32);
+    }
+
+    public void add(int chunkX, int chunkZ) {
+        if (this.pending.add(toKey(chunkX, chunkZ))) {
+            this.markDirty();
+        }
+    }
+
+    public boolean remove(int chunkX, int chunkZ) {
+        if (this.pending.remove(toKey(chunkX, chunkZ))) {
+            this.markDirty();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean remove(long key) {
+        if (this.pending.remove(key)) {
+            this.markDirty();
+            return true;
+        }
+        return false;
+    }
+
+    public long first() {
+        return this.pending.iterator().next();
+    }
+
+    public void requeue(long key) {
+        if (this.pending.remove(key)) {
+            this.pending.add(key);
+        }
+    }
+
+    public boolean contains(int chunkX, int chunkZ) {
+        return this.pending.contains(toKey(chunkX, chunkZ));
+    }
+
+    public boolean isEmpty() {
+        return this.pending.isEmpty();
+    }
+
+    public int size() {
+        return this.pending.size();
+    }
+
+    @Override
+    public void readFromNBT(NBTTagCompound compound) {
+        this.pending.clear();
+        int[] chunks = compound.getIntArray("chunks");
+        for (int i = 0; i + 1 < chunks.length; i += 2) {
+            this.pending.add(toKey(chunks[i], chunks[i + 1]));
+        }
+    }
+
+    @Override
+    public NBTTagCompound writeToNBT(NBTTagCompound compound) {
+        int[] chunks = new int[this.pending.size() * 2];
+        int i = 0;
+        for (long key : this.pending) {
+            chunks[i++] = getChunkX(key);
+            chunks[i++] = getChunkZ(key);
+        }
+        compound.setIntArray("chunks", chunks);
+        return compound;
+    }
+}
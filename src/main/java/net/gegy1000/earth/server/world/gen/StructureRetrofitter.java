@@ -0,0 +1,160 @@
+package net.gegy1000.earth.server.world.gen;
+
+import net.gegy1000.earth.Earth;
+import net.gegy1000.earth.server.util.osm.MapHandler;
+import net.gegy1000.earth.server.util.osm.MapTile;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkPrimer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public class StructureRetrofitter {
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long RETRY_TICKS = 100;
+
+    private static final Map<Long, Attempt> ATTEMPTS = new HashMap<>();
+
+    private static long retrofitted;
+    private static long retrofitNanos;
+    private static long abandoned;
+
+    public static void markPending(World world, int chunkX, int chunkZ) {
+        RetrofitQueue.get(world).add(chunkX, chunkZ);
+    }
+
+    public static boolean retrofit(World world, int chunkX, int chunkZ) {
+        RetrofitQueue queue = RetrofitQueue.get(world);
+        if (!queue.contains(chunkX, chunkZ)) {
+            return false;
+        }
+        return update(world, queue, RetrofitQueue.toKey(chunkX, chunkZ));
+    }
+
+    public static void tick(World world, long budgetNanos) {
+        RetrofitQueue queue = RetrofitQueue.get(world);
+        long start = System.nanoTime();
+        int remaining = queue.size();
+        while (remaining-- > 0 && System.nanoTime() - start < budgetNanos) {
+            long key = queue.first();
+            if (!update(world, queue, key)) {
+                queue.requeue(key);
+            }
+        }
+    }
+
+    private static boolean update(World world, RetrofitQueue queue, long key) {
+        int chunkX = RetrofitQueue.getChunkX(key);
+        int chunkZ = RetrofitQueue.getChunkZ(key);
+        Chunk chunk = world.getChunkProvider().getLoadedChunk(chunkX, chunkZ);
+        Attempt attempt = ATTEMPTS.get(key);
+        if (chunk == null) {
+            if (attempt != null) {
+                attempt.futures = null;
+            }
+            return false;
+        }
+        long time = world.getTotalWorldTime();
+        if (attempt == null) {
+            attempt = new Attempt();
+            ATTEMPTS.put(key, attempt);
+        }
+        if (attempt.futures == null) {
+            if (time < attempt.retryAt) {
+                return false;
+            }
+            attempt.futures = MapHandler.requestChunkTiles(world, chunkX, chunkZ);
+            if (attempt.futures == null) {
+                return false;
+            }
+        }
+        MapTile[] tiles = new MapTile[attempt.futures.size()];
+        for (int i = 0; i < tiles.length; i++) {
+            CompletableFuture<MapTile> future = attempt.futures.get(i);
+            if (!future.isDone()) {
+                return false;
+            }
+            if (future.isCompletedExceptionally()) {
+                attempt.futures = null;
+                attempt.failures++;
+                if (attempt.failures >= MAX_ATTEMPTS) {
+                    Earth.LOGGER.warn("Giving up adding structures to chunk {} {} after {} failed attempts", chunkX, chunkZ, attempt.failures);
+                    ATTEMPTS.remove(key);
+                    queue.remove(key);
+                    abandoned++;
+                    return true;
+                }
+                attempt.retryAt = time + (RETRY_TICKS << (attempt.failures - 1));
+                return false;
+            }
+            tiles[i] = future.getNow(null);
+        }
+        apply(world, chunk, chunkX, chunkZ, tiles);
+        ATTEMPTS.remove(key);
+        queue.remove(key);
+        return true;
+    }
+
+    public static void clear() {
+        ATTEMPTS.clear();
+    }
+
+    private static void apply(World world, Chunk chunk, int chunkX, int chunkZ, MapTile[] tiles) {
+        long start = System.nanoTime();
+        ChunkPrimer primer = new ChunkPrimer();
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                for (int y = 0; y < 256; y++) {
+                    primer.setBlockState(x, y, z, chunk.getBlockState(x, y, z));
+                }
+            }
+        }
+        ChunkPos pos = new ChunkPos(chunkX, chunkZ);
+        for (MapTile tile : tiles) {
+            tile.generate(pos, primer);
+        }
+        BlockPos.MutableBlockPos blockPos = new BlockPos.MutableBlockPos();
+        int originX = chunkX << 4;
+        int originZ = chunkZ << 4;
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                for (int y = 0; y < 256; y++) {
+                    IBlockState state = primer.getBlockState(x, y, z);
+                    if (state != chunk.getBlockState(x, y, z)) {
+                        world.setBlockState(blockPos.setPos(originX + x, y, originZ + z), state, 2);
+                    }
+                }
+            }
+        }
+        retrofitted++;
+        retrofitNanos += System.nanoTime() - start;
+    }
+
+    public static int getPending(World world) {
+        return RetrofitQueue.get(world).size();
+    }
+
+    public static long getAbandoned() {
+        return abandoned;
+    }
+
+    public static long getRetrofitted() {
+        return retrofitted;
+    }
+
+    public static long getRetrofitNanos() {
+        return retrofitNanos;
+    }
+
+    private static class Attempt {
+        private List<CompletableFuture<MapTile>> futures;
+        private int failures;
+        private long retryAt;
+    }
+}
@@ -0,0 +1,93 @@
+package net.gegy1000.earth.server.world.gen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TileBudget {
+    public static final TileBudget SHARED = new TileBudget(Long.MAX_VALUE);
+
+    private final List<Entry> resident = new ArrayList<>();
+    private int hand;
+
+    private volatile long limit;
+    private volatile long residentBytes;
+    private volatile long evictions;
+
+    public TileBudget(long limit) {
+        this.limit = limit;
+    }
+
+    public synchronized void setLimit(long limit) {
+        this.limit = limit;
+        this.evictOverBudget();
+    }
+
+    synchronized void insert(TileCache cache, int index, long weight) {
+        this.resident.add(new Entry(cache, index, weight));
+        this.residentBytes += weight;
+        this.evictOverBudget();
+    }
+
+    synchronized void removeAll(TileCache cache) {
+        for (int i = this.resident.size() - 1; i >= 0; i--) {
+            Entry entry = this.resident.get(i);
+            if (entry.cache == cache) {
+                this.remove(i);
+                entry.cache.evict(entry.index, entry.weight);
+            }
+        }
+    }
+
+    private void evictOverBudget() {
+        while (this.residentBytes > this.limit && this.resident.size() > 1) {
+            if (this.hand >= this.resident.size()) {
+                this.hand = 0;
+            }
+            Entry entry = this.resident.get(this.hand);
+            if (entry.cache.clearReferenced(entry.index)) {
+                this.hand++;
+            } else {
+                this.remove(this.hand);
+                entry.cache.evict(entry.index, entry.weight);
+                this.evictions++;
+            }
+        }
+    }
+
+    private void remove(int i) {
+        Entry entry = this.resident.get(i);
+        Entry last = this.resident.remove(this.resident.size() - 1);
+        if (i < this.resident.size()) {
+            this.resident.set(i, last);
+        }
+        this.residentBytes -= entry.weight;
+    }
+
+    public long getLimit() {
+        return this.limit;
+    }
+
+    public long getResidentBytes() {
+        return this.residentBytes;
+    }
+
+    public synchronized int getResidentCount() {
+        return this.resident.size();
+    }
+
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    private static class Entry {
+        private final TileCache cache;
+        private final int index;
+        private final long weight;
+
+        private Entry(TileCache cache, int index, long weight) {
+            this.cache = cache;
+            this.index = index;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package net.gegy1000.earth.server.world.gen;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TileCache {
+    private static final long TILE_OVERHEAD = 64;
+
+    private final int tileCountX;
+    private final int tileCountY;
+    private final TileBudget budget;
+    private final TileLoader loader;
+
+    private final AtomicReferenceArray<ImageDataMap.Tile> slots;
+    private final boolean[] referenced;
+    private final Map<Integer, CompletableFuture<ImageDataMap.Tile>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder residentBytes = new LongAdder();
+
+    public TileCache(int tileCountX, int tileCountY, TileBudget budget, TileLoader loader) {
+        this.tileCountX = tileCountX;
+        this.tileCountY = tileCountY;
+        this.budget = budget;
+        this.loader = loader;
+        int tileCount = tileCountX * tileCountY;
+        this.slots = new AtomicReferenceArray<>(tileCount);
+        this.referenced = new boolean[tileCount];
+    }
+
+    public ImageDataMap.Tile get(int tileX, int tileY) {
+        if (!this.isValid(tileX, tileY)) {
+            return null;
+        }
+        int index = tileX + tileY * this.tileCountX;
+        ImageDataMap.Tile tile = this.slots.get(index);
+        if (tile != null) {
+            this.hits.increment();
+            if (!this.referenced[index]) {
+                this.referenced[index] = true;
+            }
+        } else {
+            this.misses.increment();
+            tile = this.load(index, tileX, tileY);
+        }
+        return tile;
+    }
+
+    private ImageDataMap.Tile load(int index, int tileX, int tileY) {
+        CompletableFuture<ImageDataMap.Tile> created = new CompletableFuture<>();
+        CompletableFuture<ImageDataMap.Tile> existing = this.loading.putIfAbsent(index, created);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            ImageDataMap.Tile tile = this.slots.get(index);
+            if (tile == null) {
+                long start = System.nanoTime();
+                tile = this.loader.load(tileX, tileY);
+                this.loadNanos.add(System.nanoTime() - start);
+                this.loads.increment();
+                if (tile != null) {
+                    long weight = getWeight(tile);
+                    this.referenced[index] = true;
+                    this.slots.set(index, tile);
+                    this.residentBytes.add(weight);
+                    this.budget.insert(this, index, weight);
+                }
+            }
+            created.complete(tile);
+            return tile;
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.loading.remove(index, created);
+        }
+    }
+
+    private static long getWeight(ImageDataMap.Tile tile) {
+        byte[] data = tile.getData();
+        return TILE_OVERHEAD + (data != null ? data.length : 0);
+    }
+
+    public boolean isValid(int tileX, int tileY) {
+        return tileX >= 0 && tileY >= 0 && tileX < this.tileCountX && tileY < this.tileCountY;
+    }
+
+    public boolean isResident(int tileX, int tileY) {
+        return this.isValid(tileX, tileY) && this.slots.get(tileX + tileY * this.tileCountX) != null;
+    }
+
+    boolean clearReferenced(int index) {
+        boolean referenced = this.referenced[index];
+        this.referenced[index] = false;
+        return referenced;
+    }
+
+    void evict(int index, long weight) {
+        this.slots.set(index, null);
+        this.residentBytes.add(-weight);
+        this.evictions.increment();
+    }
+
+    public void clear() {
+        this.budget.removeAll(this);
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getLoads() {
+        return this.loads.sum();
+    }
+
+    public long getLoadNanos() {
+        return this.loadNanos.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    public long getResidentBytes() {
+        return this.residentBytes.sum();
+    }
+
+    public interface TileLoader {
+        ImageDataMap.Tile load(int tileX, int tileY);
+    }
+}
@@ -0,0 +1,193 @@
+package net.gegy1000.earth.server.world.gen;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.gegy1000.earth.Earth;
+import net.minecraft.entity.player.EntityPlayer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TilePrefetcher {
+    private static final int LOOKAHEAD_TICKS = 200;
+    private static final int MAX_HINTS = 64;
+
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final int margin;
+
+    private final Map<Request, Future<?>> inFlight = new HashMap<>();
+    private final Map<UUID, double[]> lastPositions = new HashMap<>();
+    private final ConcurrentLinkedQueue<Request> hints = new ConcurrentLinkedQueue<>();
+
+    private int lastChunkX;
+    private int lastChunkZ;
+
+    private long submitted;
+    private long cancelled;
+
+    public TilePrefetcher(int threads, int maxInFlight, int margin) {
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Earth Tile Prefetch %d").setPriority(Thread.MIN_PRIORITY).build());
+        this.maxInFlight = maxInFlight;
+        this.margin = margin;
+    }
+
+    public void onChunkRequested(EarthGenerator generator, int chunkX, int chunkZ) {
+        int deltaX = chunkX - this.lastChunkX;
+        int deltaZ = chunkZ - this.lastChunkZ;
+        this.lastChunkX = chunkX;
+        this.lastChunkZ = chunkZ;
+        if (Math.abs(deltaX) > 1 || Math.abs(deltaZ) > 1 || this.hints.size() >= MAX_HINTS) {
+            return;
+        }
+        double aheadX = generator.getDataX((chunkX << 4) + 8) + deltaX * this.margin;
+        double aheadY = generator.getDataY((chunkZ << 4) + 8) + deltaZ * this.margin;
+        Set<Request> requests = new LinkedHashSet<>();
+        this.collect(generator.getHeightmap(), aheadX, aheadY, requests);
+        this.collect(generator.getBiomemap(), aheadX, aheadY, requests);
+        this.hints.addAll(requests);
+    }
+
+    public void update(EarthGenerator generator, Collection<? extends EntityPlayer> players) {
+        Set<Request> wanted = new LinkedHashSet<>();
+        Request hint;
+        while ((hint = this.hints.poll()) != null) {
+            wanted.add(hint);
+        }
+        Set<UUID> seen = new LinkedHashSet<>();
+        for (EntityPlayer player : players) {
+            UUID id = player.getUniqueID();
+            seen.add(id);
+            double[] last = this.lastPositions.get(id);
+            this.collect(generator, player.posX, player.posZ, wanted);
+            if (last != null) {
+                double velocityX = (player.posX - last[0]) / (player.world.getTotalWorldTime() - last[2]);
+                double velocityZ = (player.posZ - last[1]) / (player.world.getTotalWorldTime() - last[2]);
+                if (!Double.isNaN(velocityX) && !Double.isNaN(velocityZ) && !Double.isInfinite(velocityX) && !Double.isInfinite(velocityZ)) {
+                    this.collect(generator, player.posX + velocityX * LOOKAHEAD_TICKS, player.posZ + velocityZ * LOOKAHEAD_TICKS, wanted);
+                }
+            }
+            this.lastPositions.put(id, new double[] { player.posX, player.posZ, player.world.getTotalWorldTime() });
+        }
+        this.lastPositions.keySet().retainAll(seen);
+        this.schedule(wanted);
+    }
+
+    private void collect(EarthGenerator generator, double x, double z, Set<Request> requests) {
+        double dataX = generator.getDataX(x);
+        double dataY = generator.getDataY(z);
+        this.collect(generator.getHeightmap(), dataX, dataY, requests);
+        this.collect(generator.getBiomemap(), dataX, dataY, requests);
+    }
+
+    private void collect(ImageDataMap map, double dataX, double dataY, Set<Request> requests) {
+        if (map == null || map.hasStore()) {
+            return;
+        }
+        int minTileX = (int) Math.floor((dataX - this.margin) / map.getTileWidth());
+        int minTileY = (int) Math.floor((dataY - this.margin) / map.getTileHeight());
+        int maxTileX = (int) Math.floor((dataX + this.margin) / map.getTileWidth());
+        int maxTileY = (int) Math.floor((dataY + this.margin) / map.getTileHeight());
+        for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                if (map.getCache().isValid(tileX, tileY)) {
+                    requests.add(new Request(map, tileX, tileY));
+                }
+            }
+        }
+    }
+
+    private synchronized void schedule(Set<Request> wanted) {
+        Iterator<Map.Entry<Request, Future<?>>> iterator = this.inFlight.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Request, Future<?>> entry = iterator.next();
+            Future<?> future = entry.getValue();
+            if (future.isDone()) {
+                iterator.remove();
+            } else if (!wanted.contains(entry.getKey())) {
+                if (future.cancel(false)) {
+                    this.cancelled++;
+                }
+                iterator.remove();
+            }
+        }
+        for (Request request : wanted) {
+            if (this.inFlight.size() >= this.maxInFlight) {
+                break;
+            }
+            if (!this.inFlight.containsKey(request) && !request.isResident()) {
+                this.inFlight.put(request, this.executor.submit(request::load));
+                this.submitted++;
+            }
+        }
+    }
+
+    public synchronized void cancelAll() {
+        for (Future<?> future : this.inFlight.values()) {
+            if (future.cancel(false)) {
+                this.cancelled++;
+            }
+        }
+        this.inFlight.clear();
+        this.hints.clear();
+        this.lastPositions.clear();
+    }
+
+    public synchronized int getInFlight() {
+        return this.inFlight.size();
+    }
+
+    public synchronized long getSubmitted() {
+        return this.submitted;
+    }
+
+    public synchronized long getCancelled() {
+        return this.cancelled;
+    }
+
+    private static class Request {
+        private final ImageDataMap map;
+        private final int tileX;
+        private final int tileY;
+
+        private Request(ImageDataMap map, int tileX, int tileY) {
+            this.map = map;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        private boolean isResident() {
+            return this.map.getCache().isResident(this.tileX, this.tileY);
+        }
+
+        private void load() {
+            try {
+                this.map.getCache().get(this.tileX, this.tileY);
+            } catch (Exception e) {
+                Earth.LOGGER.warn("Failed to prefetch tile at {}, {}", this.tileX, this.tileY, e);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(this.map) * 31 + this.tileX) * 31 + this.tileY;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Request) {
+                Request request = (Request) obj;
+                return request.map == this.map && request.tileX == this.tileX && request.tileY == this.tileY;
+            }
+            return false;
+        }
+    }
+}
@@ -48,4 +48,8 @@ public class WorldTypeEarth extends WorldType {
     public EarthGenerator getGenerator() {
         return this.generator;
     }
+
+    public boolean hasStructures() {
+        return this.structures;
+    }
 }
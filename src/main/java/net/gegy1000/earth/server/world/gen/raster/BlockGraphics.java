@@ -1,9 +1,10 @@
 package net.gegy1000.earth.server.world.gen.raster;
 
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.MultiPolygon;
-import de.topobyte.jgs.transform.CoordinateTransformer;
-import de.topobyte.jts2awt.Jts2Awt;
+import com.vividsolutions.jts.geom.Polygon;
 import net.gegy1000.earth.Earth;
 import net.gegy1000.earth.server.util.MapPoint;
 import net.gegy1000.earth.server.world.gen.EarthGenerator;
@@ -44,6 +45,8 @@ public class BlockGraphics {
 
     private boolean thick;
 
+    private double[] points = new double[256];
+
     public BlockGraphics() {
         this.graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
         this.graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
@@ -167,25 +170,56 @@ public class BlockGraphics {
     }
 
     public Path2D toPath(EarthGenerator generator, LineString string) {
-        return Jts2Awt.getPath(string, this.transformer(generator));
+        Path2D.Double path = new Path2D.Double();
+        int count = this.project(generator, string);
+        if (count > 0) {
+            double[] points = this.points;
+            path.moveTo(points[0], points[1]);
+            for (int i = 1; i < count; i++) {
+                path.lineTo(points[i << 1], points[(i << 1) + 1]);
+            }
+        }
+        return path;
     }
 
     public Area toArea(EarthGenerator generator, MultiPolygon area) {
-        return Jts2Awt.toShape(area, this.transformer(generator));
+        Area result = new Area();
+        for (int i = 0; i < area.getNumGeometries(); i++) {
+            Geometry geometry = area.getGeometryN(i);
+            if (geometry instanceof Polygon && !geometry.isEmpty()) {
+                Polygon polygon = (Polygon) geometry;
+                Area outer = this.toRing(generator, polygon.getExteriorRing());
+                for (int ring = 0; ring < polygon.getNumInteriorRing(); ring++) {
+                    outer.subtract(this.toRing(generator, polygon.getInteriorRingN(ring)));
+                }
+                result.add(outer);
+            }
+        }
+        return result;
     }
 
-    private CoordinateTransformer transformer(EarthGenerator generator) {
-        return new CoordinateTransformer() {
-            @Override
-            public double getX(double x) {
-                return MathHelper.floor(generator.fromLongitude(x));
-            }
+    private Area toRing(EarthGenerator generator, LineString ring) {
+        Path2D path = this.toPath(generator, ring);
+        path.closePath();
+        return new Area(path);
+    }
 
-            @Override
-            public double getY(double y) {
-                return MathHelper.floor(generator.fromLatitude(y));
-            }
-        };
+    private int project(EarthGenerator generator, LineString string) {
+        CoordinateSequence sequence = string.getCoordinateSequence();
+        int count = sequence.size();
+        if (this.points.length < count << 1) {
+            this.points = new double[Math.max(count << 1, this.points.length << 1)];
+        }
+        double[] points = this.points;
+        for (int i = 0; i < count; i++) {
+            points[i << 1] = sequence.getX(i);
+            points[(i << 1) + 1] = sequence.getY(i);
+        }
+        generator.fromCoordinates(points, count);
+        for (int i = 0; i < count << 1; i++) {
+            points[i] = MathHelper.floor(points[i]);
+        }
+        return count;
     }
 
     private class BlockRaster extends WritableRaster {
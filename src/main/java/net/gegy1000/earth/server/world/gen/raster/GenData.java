@@ -16,9 +16,13 @@ public class GenData {
     private GenAdapter adapter = new DefaultAdapter();
 
     public GenData(int originX, int originZ, int width, int height) {
+        this(originX, originZ, width, height, new byte[width * height]);
+    }
+
+    public GenData(int originX, int originZ, int width, int height, byte[] data) {
         this.originX = originX;
         this.originZ = originZ;
-        this.data = new byte[width * height];
+        this.data = data;
         this.width = width;
         this.height = height;
     }
@@ -63,6 +67,14 @@ public class GenData {
         return this.height;
     }
 
+    public byte[] getData() {
+        return this.data;
+    }
+
+    public GenAdapter getAdapter() {
+        return this.adapter;
+    }
+
     public int index(int x, int z) {
         return x + z * this.width;
     }
@@ -19,6 +19,10 @@ public class BuildingAdapter extends GenAdapter {
         this.metadata = metadata;
     }
 
+    public BuildingMetadata getMetadata() {
+        return this.metadata;
+    }
+
     @Override
     public void adapt(GenData data, ChunkPrimer primer) {
         this.iterate(data, state -> {
@@ -21,6 +21,16 @@ public class BuildingRasterization implements ObjectRasterization {
         return object.getTags().is("building", false) || object.getTags().is("building:part", false);
     }
 
+    @Override
+    public String[] getKeys() {
+        return new String[] { "building", "building:part" };
+    }
+
+    @Override
+    public String[] getMetadataKeys() {
+        return new String[] { "levels", "min_level", "height", "min_height", "material" };
+    }
+
     @Override
     public void rasterize(World world, EarthGenerator generator, MapObject object, List<GenData> data) {
         MultiPolygon polygon = object.toArea();
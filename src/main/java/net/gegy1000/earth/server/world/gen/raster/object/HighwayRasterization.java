@@ -24,6 +24,16 @@ public class HighwayRasterization implements ObjectRasterization {
         return object instanceof MapWay && object.getTags().is("highway");
     }
 
+    @Override
+    public String[] getKeys() {
+        return new String[] { "highway" };
+    }
+
+    @Override
+    public String[] getMetadataKeys() {
+        return new String[] { "lanes", "width" };
+    }
+
     @Override
     public void rasterize(World world, EarthGenerator generator, MapObject object, List<GenData> data) {
         Tags tags = object.getTags();
@@ -6,9 +6,14 @@ import net.gegy1000.earth.server.world.gen.raster.BlockGraphics;
 import net.gegy1000.earth.server.world.gen.raster.GenData;
 import net.minecraft.world.World;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public interface ObjectRasterization {
+    int VERSION = 1;
+
     BlockGraphics GRAPHICS = new BlockGraphics();
     HighwayRasterization HIGHWAY = new HighwayRasterization();
     BuildingRasterization BUILDING = new BuildingRasterization();
@@ -16,8 +21,29 @@ public interface ObjectRasterization {
 
     boolean applies(MapObject object);
 
+    String[] getKeys();
+
+    String[] getMetadataKeys();
+
     void rasterize(World world, EarthGenerator generator, MapObject object, List<GenData> data);
 
+    static Set<String> getRenderedKeys() {
+        Set<String> keys = new LinkedHashSet<>();
+        for (ObjectRasterization rasterizer : RASTERIZERS) {
+            Collections.addAll(keys, rasterizer.getKeys());
+        }
+        return keys;
+    }
+
+    static Set<String> getRenderedMetadataKeys() {
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add("layer");
+        for (ObjectRasterization rasterizer : RASTERIZERS) {
+            Collections.addAll(keys, rasterizer.getMetadataKeys());
+        }
+        return keys;
+    }
+
     static ObjectRasterization get(MapObject object) {
         for (ObjectRasterization rasterizer : RASTERIZERS) {
             if (rasterizer.applies(object)) {